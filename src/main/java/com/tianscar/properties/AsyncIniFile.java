@@ -0,0 +1,211 @@
+package com.tianscar.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads and stores ini files through an {@link AsynchronousFileChannel}.
+ * <p>
+ * The channel performs the I/O on its default thread pool, and every completed read
+ * is handed to the executor, which decodes the bytes and feeds them to a partial
+ * {@link IniTokenizer} before the next read is issued. No thread ever blocks on the file.
+ *
+ * @author Karstian Lee
+ */
+final class AsyncIniFile {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AsyncIniFile() {
+        throw new UnsupportedOperationException();
+    }
+
+    static CompletableFuture<IniProperties> load(IniProperties ini, IniDialect dialect, Path path,
+                                                 Charset charset, Executor executor) {
+        CompletableFuture<IniProperties> result = new CompletableFuture<>();
+        try {
+            new Load(ini, dialect, AsynchronousFileChannel.open(path, StandardOpenOption.READ),
+                    charset, executor, result).read();
+        }
+        catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    static CompletableFuture<IniProperties> store(IniProperties ini, Path path, String comments, Executor executor) {
+        CompletableFuture<IniProperties> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ini.store(out, comments);
+                    new Store(ini, AsynchronousFileChannel.open(path, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
+                            ByteBuffer.wrap(out.toByteArray()), result).write();
+                }
+                catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static void complete(AsynchronousFileChannel channel, CompletableFuture<IniProperties> result,
+                                 IniProperties ini, Throwable t) {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            if (t == null) t = e;
+            else t.addSuppressed(e);
+        }
+        if (t == null) result.complete(ini);
+        else result.completeExceptionally(t);
+    }
+
+    private static final class Load implements CompletionHandler<Integer, Void> {
+
+        private final IniProperties ini;
+        private final AsynchronousFileChannel channel;
+        private final Charset charset;
+        private final Executor executor;
+        private final CompletableFuture<IniProperties> result;
+        private final IniTokenizer tokenizer;
+        private final IniContentHandler handler;
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private CharsetDecoder decoder = null;
+        private long position = 0;
+
+        Load(IniProperties ini, IniDialect dialect, AsynchronousFileChannel channel, Charset charset,
+             Executor executor, CompletableFuture<IniProperties> result) {
+            this.ini = ini;
+            this.channel = channel;
+            this.charset = charset;
+            this.executor = executor;
+            this.result = result;
+            this.tokenizer = new IniTokenizer(dialect);
+            this.handler = new Utils.LoadHandler(ini);
+        }
+
+        void read() {
+            channel.read(bytes, position, null, this);
+        }
+
+        @Override
+        public void completed(Integer count, Void attachment) {
+            try {
+                executor.execute(() -> parse(count));
+            }
+            catch (RuntimeException e) {
+                complete(channel, result, ini, e);
+            }
+        }
+
+        @Override
+        public void failed(Throwable t, Void attachment) {
+            complete(channel, result, ini, t);
+        }
+
+        private void parse(int count) {
+            try {
+                boolean end = count == -1;
+                if (!end) position += count;
+                bytes.flip();
+                if (decoder == null) {
+                    // wait for enough bytes to detect a byte order mark
+                    if (!end && bytes.remaining() < 3) {
+                        bytes.compact();
+                        read();
+                        return;
+                    }
+                    decoder = ByteBufferReader.skipByteOrderMark(bytes, charset).newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                }
+                CoderResult coderResult;
+                do {
+                    coderResult = decoder.decode(bytes, chars, end);
+                    feed();
+                }
+                while (coderResult.isOverflow());
+                if (end) {
+                    do {
+                        coderResult = decoder.flush(chars);
+                        feed();
+                    }
+                    while (coderResult.isOverflow());
+                    tokenizer.setPartial(false);
+                    Utils.parseIni(tokenizer, handler);
+                    complete(channel, result, ini, null);
+                }
+                else {
+                    bytes.compact();
+                    read();
+                }
+            }
+            catch (Throwable t) {
+                complete(channel, result, ini, t);
+            }
+        }
+
+        private void feed() throws IOException {
+            chars.flip();
+            tokenizer.feed(chars.array(), chars.arrayOffset(), chars.arrayOffset() + chars.limit());
+            Utils.parseIni(tokenizer, handler);
+            chars.clear();
+        }
+
+    }
+
+    private static final class Store implements CompletionHandler<Integer, Void> {
+
+        private final IniProperties ini;
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer bytes;
+        private final CompletableFuture<IniProperties> result;
+        private long position = 0;
+
+        Store(IniProperties ini, AsynchronousFileChannel channel, ByteBuffer bytes, CompletableFuture<IniProperties> result) {
+            this.ini = ini;
+            this.channel = channel;
+            this.bytes = bytes;
+            this.result = result;
+        }
+
+        void write() {
+            if (bytes.hasRemaining()) channel.write(bytes, position, null, this);
+            else complete(channel, result, ini, null);
+        }
+
+        @Override
+        public void completed(Integer count, Void attachment) {
+            position += count;
+            write();
+        }
+
+        @Override
+        public void failed(Throwable t, Void attachment) {
+            complete(channel, result, ini, t);
+        }
+
+    }
+
+}
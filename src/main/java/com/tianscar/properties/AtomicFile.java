@@ -0,0 +1,131 @@
+package com.tianscar.properties;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces a file atomically: the content is written to a temporary file in the same directory,
+ * which is then moved over the target with {@link StandardCopyOption#ATOMIC_MOVE}, so readers
+ * see either the old or the new file, never a partial one, and a crash leaves the old file intact.
+ * <p>
+ * If the target exists, symbolic links to it are resolved, so that the file they point to is replaced
+ * rather than the links, and its POSIX permissions, owner and group are given to the new file
+ * where the platform allows, like a file rewritten in place.
+ *
+ * @author Karstian Lee
+ */
+final class AtomicFile {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AtomicFile() {
+        throw new UnsupportedOperationException();
+    }
+
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the file. If {@code sync} is {@code true}, the temporary file is forced to the storage
+     * device before the move, and the directory after it where the platform allows.
+     */
+    static void write(Path path, Content content, boolean sync) throws IOException {
+        Path target = path.toAbsolutePath();
+        PosixFileAttributes attributes = null;
+        if (Files.exists(target)) {
+            target = target.toRealPath();
+            PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            if (view != null) attributes = view.readAttributes();
+        }
+        Path dir = target.getParent();
+        Path temp = createTempFile(dir, target.getFileName().toString(), attributes);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                content.writeTo(out);
+                out.flush();
+                if (sync) channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (Throwable t) {
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+        if (sync) {
+            // not supported on every platform, the file itself is already durable
+            try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Creates a hidden temporary file next to the target. If the POSIX attributes of an existing target
+     * are specified, the file is created with its permissions, which are set again since they are masked
+     * by the umask on creation, and its owner and group are copied where allowed. Otherwise the file has
+     * the default permissions, like a file created by {@link java.io.FileOutputStream}.
+     */
+    private static Path createTempFile(Path dir, String name, PosixFileAttributes attributes) throws IOException {
+        FileAttribute<?>[] fileAttributes = attributes == null ? new FileAttribute<?>[0] :
+                new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(attributes.permissions()) };
+        Path temp;
+        while (true) {
+            temp = dir.resolve("." + name + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                temp = Files.createFile(temp, fileAttributes);
+                break;
+            }
+            catch (FileAlreadyExistsException ignored) {
+            }
+        }
+        if (attributes == null) return temp;
+        try {
+            PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+            view.setPermissions(attributes.permissions());
+            // changing the owner or group usually requires privileges, the file then keeps those of the current user
+            try {
+                view.setGroup(attributes.group());
+            }
+            catch (IOException ignored) {
+            }
+            try {
+                view.setOwner(attributes.owner());
+            }
+            catch (IOException ignored) {
+            }
+        }
+        catch (Throwable t) {
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+        return temp;
+    }
+
+}
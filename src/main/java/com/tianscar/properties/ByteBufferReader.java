@@ -0,0 +1,183 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link Reader} decoding characters straight out of a {@link ByteBuffer},
+ * usually a {@link java.nio.MappedByteBuffer}, without intermediate stream buffers.
+ * ISO 8859-1 and US-ASCII are widened byte by byte, other charsets go through
+ * a {@link CharsetDecoder} writing directly into the caller's array.
+ * UTF-8 is decoded by {@link Utf8Reader} instead, see {@link #open(FileChannel, Charset)}.
+ */
+final class ByteBufferReader extends Reader {
+
+    /**
+     * Files smaller than this are read into the heap, mapping them costs more than copying.
+     */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    private static final int LATIN1 = 0, ASCII = 1, DECODER = 2;
+
+    private final ByteBuffer buffer;
+    private final int mode;
+    private final CharsetDecoder decoder;
+    private final byte[] scratch;
+    private boolean endOfInput = false, flushed = false;
+
+    ByteBufferReader(ByteBuffer buffer, Charset charset) {
+        this.buffer = buffer;
+        if (StandardCharsets.ISO_8859_1.equals(charset)) mode = LATIN1;
+        else if (StandardCharsets.US_ASCII.equals(charset)) mode = ASCII;
+        else mode = DECODER;
+        if (mode == DECODER) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            scratch = null;
+        }
+        else {
+            decoder = null;
+            scratch = buffer.hasArray() ? null : new byte[8192];
+        }
+    }
+
+    /**
+     * Opens a reader over the remaining content of the specified channel, starting at its current position.
+     * The file is memory-mapped unless it is too small or too large to be mapped at once,
+     * the position of the channel is advanced to its end.
+     * A byte order mark is skipped and overrides the charset, unless the charset is ISO 8859-1.
+     */
+    static Reader open(FileChannel channel, Charset charset) throws IOException {
+        ByteBuffer buffer = read(channel);
+        if (buffer == null) return Utils.newReader(Channels.newInputStream(channel), charset);
+        else return open(buffer, charset);
+    }
+
+    /**
+     * Opens a reader over the remaining content of the specified buffer.
+     * A byte order mark is skipped and overrides the charset, unless the charset is ISO 8859-1.
+     */
+    static Reader open(ByteBuffer buffer, Charset charset) {
+        charset = skipByteOrderMark(buffer, charset);
+        if (StandardCharsets.UTF_8.equals(charset)) return new Utf8Reader(buffer);
+        else return new ByteBufferReader(buffer, charset);
+    }
+
+    /**
+     * Reads the remaining content of the specified channel, starting at its current position.
+     * The file is memory-mapped unless it is too small to be worth it, the position of the channel
+     * is advanced to its end.
+     *
+     * @return the content, or {@code null} if it is too large to be held in a single buffer
+     */
+    static ByteBuffer read(FileChannel channel) throws IOException {
+        long position = channel.position();
+        long size = channel.size() - position;
+        if (size > Integer.MAX_VALUE) return null;
+        ByteBuffer buffer;
+        if (size < MAP_THRESHOLD) {
+            buffer = ByteBuffer.allocate((int) Math.max(size, 0));
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until the buffer is full or the end of the channel is reached
+            }
+            buffer.flip();
+        }
+        else {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            channel.position(position + size);
+        }
+        return buffer;
+    }
+
+    /**
+     * Skips a UTF-8, UTF-16BE or UTF-16LE byte order mark at the position of the specified buffer.
+     * Nothing is skipped if the charset is ISO 8859-1, where every byte is a character.
+     *
+     * @return the charset indicated by the byte order mark, or the specified charset if there is none
+     */
+    static Charset skipByteOrderMark(ByteBuffer buffer, Charset charset) {
+        if (StandardCharsets.ISO_8859_1.equals(charset)) return charset;
+        int position = buffer.position(), remaining = buffer.remaining();
+        if (remaining >= 3 && buffer.get(position) == (byte) 0xEF
+                && buffer.get(position + 1) == (byte) 0xBB && buffer.get(position + 2) == (byte) 0xBF) {
+            buffer.position(position + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (remaining >= 2) {
+            if (buffer.get(position) == (byte) 0xFE && buffer.get(position + 1) == (byte) 0xFF) {
+                buffer.position(position + 2);
+                return StandardCharsets.UTF_16BE;
+            }
+            if (buffer.get(position) == (byte) 0xFF && buffer.get(position + 1) == (byte) 0xFE) {
+                buffer.position(position + 2);
+                return StandardCharsets.UTF_16LE;
+            }
+        }
+        return charset;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (mode == DECODER) return decode(cbuf, off, len);
+        int remaining = buffer.remaining();
+        if (remaining == 0) return -1;
+        int count = Math.min(len, remaining);
+        byte[] bytes;
+        int base;
+        if (scratch == null) {
+            bytes = buffer.array();
+            base = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + count);
+        }
+        else {
+            count = Math.min(count, scratch.length);
+            buffer.get(bytes = scratch, base = 0, count);
+        }
+        if (mode == LATIN1) {
+            for (int i = 0; i < count; i ++) {
+                cbuf[off + i] = (char) (bytes[base + i] & 0xff);
+            }
+        }
+        else {
+            byte b;
+            for (int i = 0; i < count; i ++) {
+                b = bytes[base + i];
+                cbuf[off + i] = b < 0 ? '\uFFFD' : (char) b;
+            }
+        }
+        return count;
+    }
+
+    private int decode(char[] cbuf, int off, int len) throws IOException {
+        if (flushed) return -1;
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        CoderResult result;
+        if (!endOfInput) {
+            result = decoder.decode(buffer, out, true);
+            if (result.isError()) result.throwException();
+            if (result.isUnderflow()) endOfInput = true;
+        }
+        if (endOfInput) {
+            result = decoder.flush(out);
+            if (result.isUnderflow()) flushed = true;
+        }
+        int count = out.position() - off;
+        return count == 0 && flushed ? -1 : count;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
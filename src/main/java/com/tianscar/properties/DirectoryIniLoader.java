@@ -0,0 +1,92 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads all ini files of a directory matching a glob, one task per file.
+ *
+ * @author Karstian Lee
+ */
+final class DirectoryIniLoader {
+
+    private DirectoryIniLoader() {
+        throw new UnsupportedOperationException();
+    }
+
+    static SortedMap<Path, IniProperties> loadAll(Path dir, String glob) throws IOException {
+        ExecutorService executor = newExecutor();
+        try {
+            return loadAll(dir, glob, executor);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    static SortedMap<Path, IniProperties> loadAll(Path dir, String glob, Executor executor) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path)) paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        List<CompletableFuture<IniProperties>> futures = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                IniProperties ini = new IniProperties();
+                try {
+                    ini.load(path);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return ini;
+            }, executor));
+        }
+        SortedMap<Path, IniProperties> result = new TreeMap<>();
+        Throwable error = null;
+        for (int i = 0; i < futures.size(); i ++) {
+            try {
+                result.put(paths.get(i), futures.get(i).join());
+            }
+            catch (CompletionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                if (error == null) error = cause;
+                else error.addSuppressed(cause);
+            }
+        }
+        if (error instanceof IOException) throw (IOException) error;
+        else if (error instanceof RuntimeException) throw (RuntimeException) error;
+        else if (error instanceof Error) throw (Error) error;
+        return result;
+    }
+
+    /**
+     * Returns a virtual thread per task executor on Java 21 or later,
+     * otherwise a pool bounded to twice the number of processors.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A UTF-8 or ISO-8859-1 encoding {@link Writer}, the counterpart of {@link Utf8Reader},
+ * encoding chars by hand straight into its byte buffer. Unmappable characters and unpaired
+ * surrogates are replaced with {@code '?'}, one replacement for each character or surrogate pair,
+ * the same as {@link java.io.OutputStreamWriter}.
+ */
+final class EncodingWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final boolean latin1;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int count = 0;
+    private char pending = 0;
+
+    EncodingWriter(OutputStream out, boolean latin1) {
+        this.out = out;
+        this.latin1 = latin1;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(bytes, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int end = off + len;
+        char ch;
+        while (off < end) {
+            if (pending == 0) {
+                // copy the run of ASCII chars that fits into the buffer
+                int limit = Math.min(end, off + bytes.length - count);
+                while (off < limit && (ch = str.charAt(off)) < 0x80) {
+                    bytes[count ++] = (byte) ch;
+                    off ++;
+                }
+                if (count == bytes.length) flushBuffer();
+                if (off == end) break;
+            }
+            encode(str.charAt(off ++));
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        char ch;
+        while (off < end) {
+            if (pending == 0) {
+                int limit = Math.min(end, off + bytes.length - count);
+                while (off < limit && (ch = cbuf[off]) < 0x80) {
+                    bytes[count ++] = (byte) ch;
+                    off ++;
+                }
+                if (count == bytes.length) flushBuffer();
+                if (off == end) break;
+            }
+            encode(cbuf[off ++]);
+        }
+    }
+
+    /**
+     * Encodes a single char, keeping a high surrogate pending until the next char.
+     */
+    private void encode(char ch) throws IOException {
+        if (bytes.length - count < 4) flushBuffer();
+        if (pending != 0) {
+            char high = pending;
+            pending = 0;
+            if (Character.isLowSurrogate(ch)) {
+                encode(Character.toCodePoint(high, ch));
+                return;
+            }
+            bytes[count ++] = '?';
+        }
+        if (Character.isHighSurrogate(ch)) pending = ch;
+        else if (Character.isLowSurrogate(ch)) bytes[count ++] = '?';
+        else encode((int) ch);
+    }
+
+    private void encode(int codePoint) {
+        if (codePoint < 0x80) bytes[count ++] = (byte) codePoint;
+        else if (latin1) bytes[count ++] = codePoint < 0x100 ? (byte) codePoint : (byte) '?';
+        else if (codePoint < 0x800) {
+            bytes[count ++] = (byte) (0xC0 | (codePoint >> 6));
+            bytes[count ++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else if (codePoint < 0x10000) {
+            bytes[count ++] = (byte) (0xE0 | (codePoint >> 12));
+            bytes[count ++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[count ++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else {
+            bytes[count ++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[count ++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[count ++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[count ++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    /**
+     * Writes the buffered bytes and flushes the stream, a pending high surrogate stays pending.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pending != 0) {
+            pending = 0;
+            if (count == bytes.length) flushBuffer();
+            bytes[count ++] = '?';
+        }
+        try {
+            flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.tianscar.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Stores an {@link IniProperties} to byte streams, keeping the encoded bytes of each section
+ * so that the next store only encodes the sections modified since, the ones whose
+ * {@link TrackedSection#modCount() modification count} changed or that were replaced.
+ * Sections that are not {@link TrackedSection}s are encoded every time, and so are all sections
+ * in charsets that cannot encode them separately, see {@link Utils#isStateless(Charset)}.
+ * <p>
+ * Like {@link Utils#snapshot(IniProperties)}, the sections to encode are copied while holding the
+ * monitor of the {@code IniProperties}, and encoded and written after releasing it.
+ *
+ * @author Karstian Lee
+ */
+final class IncrementalStore {
+
+    private static final class Entry {
+        final Properties section;
+        final long modCount;
+        final byte[] bytes;
+        Entry(Properties section, long modCount, byte[] bytes) {
+            this.section = section;
+            this.modCount = modCount;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A section to store, either with its kept entry if it is up to date, or with a copy of its entries.
+     */
+    private static final class Part {
+        final String sectionName;
+        final Properties section;
+        final long modCount;
+        final Entry entry;
+        final List<Map.Entry<Object, Object>> entries;
+        Part(String sectionName, Properties section, long modCount, Entry entry, List<Map.Entry<Object, Object>> entries) {
+            this.sectionName = sectionName;
+            this.section = section;
+            this.modCount = modCount;
+            this.entry = entry;
+            this.entries = entries;
+        }
+    }
+
+    private final char[] scratch = new char[Utils.SCRATCH_SIZE];
+    private Charset charset = null;
+    private Map<String, Entry> entries = new HashMap<>();
+
+    synchronized void store(IniProperties ini, IniDialect dialect, OutputStream out,
+                            String comments, Charset charset) throws IOException {
+        Writer writer = Utils.newWriter(out, charset);
+        if (!Utils.isStateless(charset)) {
+            // sections encoded separately would each start with a byte order mark
+            entries.clear();
+            this.charset = null;
+            Utils.storeIni(ini, dialect, writer, comments, Utils.isEscUnicode(charset), true);
+            return;
+        }
+        if (!charset.equals(this.charset)) {
+            entries.clear();
+            this.charset = charset;
+        }
+        List<Part> parts = new ArrayList<>();
+        synchronized (ini) {
+            parts.add(part(null, ini.getSection(null)));
+            for (Map.Entry<String, Properties> sectionEntry : ini.sections().entrySet()) {
+                parts.add(part(sectionEntry.getKey(), sectionEntry.getValue()));
+            }
+        }
+        Utils.writeHeader(dialect, writer, comments, true);
+        writer.flush();
+        Map<String, Entry> next = new HashMap<>();
+        for (Part part : parts) {
+            write(next, dialect, out, part);
+        }
+        // sections removed since the last store are dropped here
+        entries = next;
+        out.flush();
+    }
+
+    private Part part(String sectionName, Properties section) {
+        if (section instanceof LazySection) section = ((LazySection) section).properties();
+        synchronized (section) {
+            // the count is read before the copy, a concurrent change only makes the entry stale
+            long modCount = section instanceof TrackedSection ? ((TrackedSection) section).modCount() : -1;
+            Entry entry = entries.get(sectionName);
+            if (entry != null && entry.section == section && modCount != -1 && entry.modCount == modCount) {
+                return new Part(sectionName, section, modCount, entry, null);
+            }
+            else return new Part(sectionName, section, modCount, null, Utils.entries(section));
+        }
+    }
+
+    private void write(Map<String, Entry> next, IniDialect dialect, OutputStream out, Part part) throws IOException {
+        Entry entry = part.entry;
+        if (entry == null) {
+            if (part.entries.isEmpty()) return;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Writer writer = Utils.newWriter(bytes, charset);
+            boolean escUnicode = Utils.isEscUnicode(charset);
+            if (part.sectionName == null) Utils.writeProperties(part.entries, dialect, writer, escUnicode, scratch);
+            else Utils.writeSection(part.sectionName, part.entries, dialect, writer, escUnicode, scratch);
+            writer.flush();
+            entry = new Entry(part.section, part.modCount, bytes.toByteArray());
+        }
+        if (part.modCount != -1) next.put(part.sectionName, entry);
+        out.write(entry.bytes);
+    }
+
+}
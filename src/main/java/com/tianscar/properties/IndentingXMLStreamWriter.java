@@ -87,12 +87,21 @@ final class IndentingXMLStreamWriter extends StreamWriterDelegate implements Ind
 
     private String newLine = NORMAL_END_OF_LINE;
 
-    /** newLine followed by copies of indent. */
+    private int indentLength = indent.length();
+
+    private int newLineLength = newLine.length();
+
+    /**
+     * newLine followed by copies of indent, one for each level of the stack, so
+     * the prefix of every depth is a slice of it. Built when first needed, and
+     * rebuilt when the stack grows.
+     */
     private char[] linePrefix = null;
 
     public void setIndent(String indent) {
         if (!indent.equals(this.indent)) {
             this.indent = indent;
+            indentLength = indent.length();
             linePrefix = null;
         }
     }
@@ -104,6 +113,7 @@ final class IndentingXMLStreamWriter extends StreamWriterDelegate implements Ind
     public void setNewLine(String newLine) {
         if (!newLine.equals(this.newLine)) {
             this.newLine = newLine;
+            newLineLength = newLine.length();
             linePrefix = null;
         }
     }
@@ -241,6 +251,34 @@ final class IndentingXMLStreamWriter extends StreamWriterDelegate implements Ind
         afterEndDocument();
     }
 
+    /**
+     * Start writing a fragment of a document, nested at the given depth in
+     * elements written by another stream.
+     */
+    void startFragment(int depth) {
+        while (stack.length <= depth) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, stack.length);
+            stack = newStack;
+        }
+        this.depth = depth;
+        stack[depth] = 0;
+    }
+
+    /**
+     * Prepare to append a fragment written by another stream to the current
+     * scope, by closing the current start tag and flushing.
+     */
+    void beforeFragment() throws XMLStreamException {
+        out.writeCharacters("");
+        out.flush();
+    }
+
+    /** Note that a fragment containing markup was appended to the current scope. */
+    void afterFragment() {
+        afterMarkup();
+    }
+
     /** Prepare to write markup, by writing a new line and indentation. */
     protected void beforeMarkup() {
         int soFar = stack[depth];
@@ -249,7 +287,7 @@ final class IndentingXMLStreamWriter extends StreamWriterDelegate implements Ind
         {
             try {
                 writeNewLine(depth);
-                if (depth > 0 && getIndent().length() > 0) {
+                if (depth > 0 && indentLength > 0) {
                     afterMarkup(); // indentation was written
                 }
             } catch (Exception e) {
@@ -315,23 +353,23 @@ final class IndentingXMLStreamWriter extends StreamWriterDelegate implements Ind
 
     /** Write a line separator followed by indentation. */
     protected void writeNewLine(int indentation) throws XMLStreamException {
-        final int newLineLength = getNewLine().length();
-        final int prefixLength = newLineLength + (getIndent().length() * indentation);
+        final int prefixLength = newLineLength + (indentLength * indentation);
         if (prefixLength > 0) {
-            if (linePrefix == null) {
-                linePrefix = (getNewLine() + getIndent()).toCharArray();
-            }
-            while (prefixLength > linePrefix.length) {
-                // make linePrefix longer:
-                char[] newPrefix = new char[newLineLength
-                        + ((linePrefix.length - newLineLength) * 2)];
-                System.arraycopy(linePrefix, 0, newPrefix, 0, linePrefix.length);
-                System.arraycopy(linePrefix, newLineLength, newPrefix, linePrefix.length,
-                        linePrefix.length - newLineLength);
-                linePrefix = newPrefix;
+            if (linePrefix == null || prefixLength > linePrefix.length) {
+                buildLinePrefix(Math.max(indentation, stack.length));
             }
             out.writeCharacters(linePrefix, 0, prefixLength);
         }
     }
 
+    /** Build the line prefix for the given number of levels. */
+    private void buildLinePrefix(int levels) {
+        char[] prefix = new char[newLineLength + (indentLength * levels)];
+        newLine.getChars(0, newLineLength, prefix, 0);
+        for (int i = 0; i < levels; i++) {
+            indent.getChars(0, indentLength, prefix, newLineLength + (indentLength * i));
+        }
+        linePrefix = prefix;
+    }
+
 }
@@ -0,0 +1,44 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+
+/**
+ * Receives the content of an ini file as it is parsed, the ini counterpart of
+ * {@link org.xml.sax.ContentHandler}. Callbacks are made in document order by
+ * {@link IniReader#parse(IniContentHandler)}, and loading an {@link IniProperties}
+ * is itself implemented as one such handler.
+ * <p>
+ * Entries before the first section header belong to the global properties.
+ *
+ * @author Karstian Lee
+ */
+public interface IniContentHandler {
+
+    /**
+     * Receives a section header. Entries that follow belong to this section
+     * until the next section header.
+     *
+     * @param sectionName the section name, with relative names already resolved
+     * @throws IOException if the handler fails
+     */
+    void startSection(String sectionName) throws IOException;
+
+    /**
+     * Receives an entry of the current section.
+     *
+     * @param key the key
+     * @param value the value
+     * @throws IOException if the handler fails
+     */
+    void entry(String key, String value) throws IOException;
+
+    /**
+     * Receives a comment line. The default implementation does nothing.
+     *
+     * @param comment the comment text, without the comment sign and the line terminator
+     * @throws IOException if the handler fails
+     */
+    default void comment(String comment) throws IOException {
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.tianscar.properties;
+
+import java.io.Serializable;
+
+/**
+ * The {@link IniDialect} class describes the syntax of an ini file:
+ * the comment signs, the key-value delimiters, whether values are unquoted,
+ * whether backslash escapes are processed, and the separator of nested section names.
+ * <p>
+ * A dialect is compiled into a character class table when it is created,
+ * and that table is shared by the loader, the writer and the XML handler
+ * of every {@link IniProperties} using the dialect.
+ * <p>
+ * The comment signs and delimiters must be printable ASCII characters, and
+ * must not be whitespace, {@code [}, {@code ]} or {@code \}.
+ * The first comment sign and the first delimiter are the ones written by the store methods.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Karstian Lee
+ */
+public final class IniDialect implements Serializable {
+
+    private static final long serialVersionUID = -1842069935271460711L;
+
+    static final byte PLAIN = 0, COMMENT_SIGN = 1, DELIMITER = 2, WHITESPACE = 4, SPECIAL = 8, ESCAPE = 16;
+
+    /**
+     * The default dialect: {@code #} and {@code ;} comment signs, {@code =} and {@code :} delimiters,
+     * quoted keys and values, backslash escapes and {@code .} separated nested section names.
+     */
+    public static final IniDialect DEFAULT = new IniDialect("#;", "=:", true, true, '.');
+
+    private final String commentSigns;
+    private final String delimiters;
+    private final boolean removeQuotes;
+    private final boolean escapes;
+    private final char sectionSeparator;
+
+    /**
+     * The character class table, indexed by characters less than {@code 256}.
+     */
+    final byte[] classes;
+
+    /**
+     * The character class table of the properties syntax, where brackets are plain characters.
+     */
+    final byte[] propertiesClasses;
+
+    /**
+     * Creates a {@link IniDialect}.
+     *
+     * @param commentSigns the comment signs, every character is a comment sign
+     * @param delimiters the delimiters, every character is a delimiter
+     * @param removeQuotes whether a pair of surrounding {@code "} or {@code '} is removed from keys and values
+     * @param escapes whether backslash escapes are processed when loading and written when storing
+     * @param sectionSeparator the separator of nested section names
+     * @throws IllegalArgumentException if {@code commentSigns} or {@code delimiters} is empty,
+     *         or contains an invalid character, or if they overlap
+     * @throws NullPointerException if {@code commentSigns} or {@code delimiters} is {@code null}
+     */
+    public IniDialect(String commentSigns, String delimiters, boolean removeQuotes, boolean escapes, char sectionSeparator) {
+        if (commentSigns.isEmpty()) throw new IllegalArgumentException("no comment sign");
+        if (delimiters.isEmpty()) throw new IllegalArgumentException("no delimiter");
+        this.commentSigns = commentSigns;
+        this.delimiters = delimiters;
+        this.removeQuotes = removeQuotes;
+        this.escapes = escapes;
+        this.sectionSeparator = sectionSeparator;
+        this.classes = new byte[256];
+        for (int ch = 0; ch < classes.length; ch ++) {
+            if (Character.isWhitespace(ch)) classes[ch] |= WHITESPACE;
+        }
+        classes['['] |= SPECIAL;
+        classes[']'] |= SPECIAL;
+        classes['\r'] |= SPECIAL;
+        classes['\n'] |= SPECIAL;
+        if (escapes) classes['\\'] |= SPECIAL | ESCAPE;
+        for (int i = 0; i < commentSigns.length(); i ++) {
+            classes[checkSign(commentSigns.charAt(i))] |= COMMENT_SIGN | ESCAPE;
+        }
+        for (int i = 0; i < delimiters.length(); i ++) {
+            char delimiter = checkSign(delimiters.charAt(i));
+            if ((classes[delimiter] & COMMENT_SIGN) != 0) throw new IllegalArgumentException("delimiter is also a comment sign: " + delimiter);
+            classes[delimiter] |= DELIMITER | ESCAPE;
+        }
+        propertiesClasses = classes.clone();
+        propertiesClasses['['] = propertiesClasses[']'] = PLAIN;
+    }
+
+    private static char checkSign(char ch) {
+        if (ch <= ' ' || ch > '~' || ch == '[' || ch == ']' || ch == '\\') throw new IllegalArgumentException("invalid sign: " + ch);
+        return ch;
+    }
+
+    /**
+     * Returns the comment signs of this {@link IniDialect}.
+     * @return the comment signs
+     */
+    public String commentSigns() {
+        return commentSigns;
+    }
+
+    /**
+     * Returns the comment sign written by the store methods.
+     * @return the first comment sign
+     */
+    public char commentSign() {
+        return commentSigns.charAt(0);
+    }
+
+    /**
+     * Returns the delimiters of this {@link IniDialect}.
+     * @return the delimiters
+     */
+    public String delimiters() {
+        return delimiters;
+    }
+
+    /**
+     * Returns the delimiter written by the store methods.
+     * @return the first delimiter
+     */
+    public char delimiter() {
+        return delimiters.charAt(0);
+    }
+
+    /**
+     * Returns whether a pair of surrounding {@code "} or {@code '} is removed from keys and values.
+     * @return true if quotes are removed
+     */
+    public boolean removeQuotes() {
+        return removeQuotes;
+    }
+
+    /**
+     * Returns whether backslash escapes are processed when loading and written when storing.
+     * @return true if escapes are processed
+     */
+    public boolean escapes() {
+        return escapes;
+    }
+
+    /**
+     * Returns the separator of nested section names.
+     * @return the section separator
+     */
+    public char sectionSeparator() {
+        return sectionSeparator;
+    }
+
+    boolean isCommentSign(char ch) {
+        return ch < 256 && (classes[ch] & COMMENT_SIGN) != 0;
+    }
+
+    boolean isDelimiter(char ch) {
+        return ch < 256 && (classes[ch] & DELIMITER) != 0;
+    }
+
+    boolean isRelative(String sectionName) {
+        return sectionName != null && !sectionName.isEmpty() && sectionName.charAt(0) == sectionSeparator;
+    }
+
+    /**
+     * Resolves a section name relative to the specified base section name.
+     * A section name starting with the section separator is a child of the base section.
+     */
+    String resolve(String baseSectionName, String sectionName) {
+        if (!isRelative(sectionName)) return sectionName;
+        else if (baseSectionName == null) return sectionName.substring(1);
+        else return baseSectionName + sectionName;
+    }
+
+    /**
+     * Compares the specified Object with this {@link IniDialect} for equality.
+     * @param o object to be compared for equality with this {@code IniDialect}
+     * @return true if the specified Object is equal to this {@code IniDialect}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IniDialect)) return false;
+
+        IniDialect that = (IniDialect) o;
+
+        if (removeQuotes != that.removeQuotes) return false;
+        if (escapes != that.escapes) return false;
+        if (sectionSeparator != that.sectionSeparator) return false;
+        if (!commentSigns.equals(that.commentSigns)) return false;
+        return delimiters.equals(that.delimiters);
+    }
+
+    /**
+     * Returns the hash code value for this {@link IniDialect}.
+     * @return the hash code value for this {@code IniDialect}
+     */
+    @Override
+    public int hashCode() {
+        int result = commentSigns.hashCode();
+        result = 31 * result + delimiters.hashCode();
+        result = 31 * result + (removeQuotes ? 1 : 0);
+        result = 31 * result + (escapes ? 1 : 0);
+        result = 31 * result + (int) sectionSeparator;
+        return result;
+    }
+
+}
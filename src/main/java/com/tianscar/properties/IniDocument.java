@@ -0,0 +1,503 @@
+package com.tianscar.properties;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The {@link IniDocument} class is an editable ini file that keeps the text it was loaded from.
+ * Unlike {@link IniProperties}, it does not regenerate the file when stored: the loaded text is
+ * copied verbatim, including comments, blank lines, ordering and formatting, and only the edits
+ * are written, so editing a single value of a large hand-maintained file changes a single line.
+ * <p>
+ * The values seen by {@link #get(String, String)} are the ones {@link IniProperties#load(Reader)}
+ * would load from the same text, which is described by the {@link IniDialect} of this document:
+ * if a key occurs more than once in a section, the last occurrence wins, and if a section header
+ * occurs more than once, the last occurrence replaces the previous ones. Section names are
+ * absolute names, with relative names already resolved, and the {@code null} section name
+ * refers to the global properties.
+ * <p>
+ * Edits are recorded against the loaded text and applied when the document is stored:
+ * <ul>
+ * <li>Changing the value of an entry rewrites the line of its last occurrence,
+ * escaped like {@link IniProperties#store(Writer, String)}.
+ * <li>Removing an entry deletes all its occurrences in its section.
+ * <li>New entries are inserted after the last entry of their section,
+ * and new sections are appended to the end of the document.
+ * <li>Removing a section deletes all occurrences of its header, with their entries and comments.
+ * </ul>
+ * New lines use the line separator of the loaded text. Storing a document does not
+ * clear its edits, a document can be stored again after further edits.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author Karstian Lee
+ */
+public class IniDocument {
+
+    private static final class Entry {
+        final String key;
+        String value, original = null;
+        int start = -1, lineEnd = -1, end = -1;
+        List<int[]> duplicates = null;
+        boolean removed = false;
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Header {
+        final Section section;
+        final int index, start, lineEnd;
+        final boolean relative;
+        int end;
+        Header(Section section, int index, int start, int lineEnd, boolean relative) {
+            this.section = section;
+            this.index = index;
+            this.start = start;
+            this.lineEnd = lineEnd;
+            this.relative = relative;
+        }
+    }
+
+    private static final class Section {
+        final String name;
+        final boolean added;
+        final List<Header> headers = new ArrayList<>(1);
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        final List<Entry> addedEntries = new ArrayList<>();
+        final Set<Entry> modifiedEntries = new LinkedHashSet<>();
+        int insertAt = -1;
+        boolean removed = false;
+        Section(String name, boolean added) {
+            this.name = name;
+            this.added = added;
+        }
+    }
+
+    private static final int INSERT = 0, REPLACE = 1, APPEND = 2;
+
+    private static final class Patch {
+        final int start, end, kind;
+        final Section section;
+        final Entry entry;
+        Patch(int start, int end, int kind, Section section, Entry entry) {
+            this.start = start;
+            this.end = end;
+            this.kind = kind;
+            this.section = section;
+            this.entry = entry;
+        }
+    }
+
+    private final IniDialect dialect;
+    private char[] text = new char[0];
+    private int length = 0;
+    private String ending = "";
+    private String lineSeparator = "\n";
+    private Section global = new Section(null, false);
+    private List<Header> headers = new ArrayList<>();
+    private Map<String, Section> sections = new LinkedHashMap<>();
+    private final Set<Section> modifiedSections = new LinkedHashSet<>();
+
+    /**
+     * Creates an empty {@link IniDocument}, using the default dialect.
+     */
+    public IniDocument() {
+        this(IniDialect.DEFAULT);
+    }
+
+    /**
+     * Creates an empty {@link IniDocument}, using the specified dialect.
+     *
+     * @param dialect the dialect
+     * @throws NullPointerException if {@code dialect} is {@code null}
+     */
+    public IniDocument(IniDialect dialect) {
+        this.dialect = Objects.requireNonNull(dialect, "dialect cannot be null");
+        global.insertAt = 0;
+    }
+
+    /**
+     * Returns the dialect of this {@link IniDocument}.
+     * @return the dialect
+     */
+    public IniDialect dialect() {
+        return dialect;
+    }
+
+    /**
+     * Reads this {@link IniDocument} from the input character stream,
+     * replacing its content and discarding its edits.
+     * The stream remains open after this method returns.
+     *
+     * @param reader the input character stream
+     * @throws IOException if an error occurred when reading from the input stream
+     * @throws IllegalArgumentException if a malformed Unicode escape appears in the input
+     * @throws NullPointerException if {@code reader} is {@code null}
+     */
+    public void load(Reader reader) throws IOException {
+        Objects.requireNonNull(reader, "reader cannot be null");
+        CharBuffer buffer = Utils.readFully(reader);
+        char[] text = buffer.array();
+        int length = buffer.limit();
+        Section global = new Section(null, false);
+        Map<String, Section> sections = new LinkedHashMap<>();
+        List<Header> headers = new ArrayList<>();
+        Section section = global;
+        IniTokenizer tokenizer = new IniTokenizer(text, 0, length, dialect);
+        // relative names are resolved here, to know which headers depend on the previous one
+        tokenizer.keepRelativeSectionNames();
+        // stop before completing the last line, to tell whether the text ends at a line start
+        tokenizer.setPartial(true);
+        boolean partial = true, terminated = true;
+        int token, start, end;
+        while (true) {
+            if ((token = tokenizer.next()) == IniTokenizer.END) {
+                if (!partial) break;
+                partial = false;
+                terminated = tokenizer.atLineStart();
+                tokenizer.setPartial(false);
+                continue;
+            }
+            start = tokenizer.tokenStart();
+            end = tokenizer.position();
+            // a \r\n terminator ends the line at the \r
+            if (end > 0 && end < length && text[end - 1] == '\r' && text[end] == '\n') end ++;
+            if (token == IniTokenizer.SECTION) {
+                if (headers.isEmpty()) global.insertAt = start;
+                else headers.get(headers.size() - 1).end = start;
+                String relativeName = tokenizer.sectionName();
+                String sectionName = dialect.resolve(section.name, relativeName);
+                section = sections.get(sectionName);
+                if (section == null) sections.put(sectionName, section = new Section(sectionName, false));
+                else section.entries.clear();
+                Header header = new Header(section, headers.size(), start, lineEnd(text, start, end),
+                        dialect.isRelative(relativeName));
+                header.end = length;
+                headers.add(header);
+                section.headers.add(header);
+            }
+            else {
+                String key = tokenizer.key();
+                Entry entry = section.entries.get(key);
+                if (entry == null) section.entries.put(key, entry = new Entry(key));
+                else {
+                    if (entry.duplicates == null) entry.duplicates = new ArrayList<>(1);
+                    entry.duplicates.add(new int[] {entry.start, entry.end});
+                }
+                entry.value = entry.original = tokenizer.value();
+                entry.start = start;
+                entry.lineEnd = lineEnd(text, start, end);
+                entry.end = end;
+            }
+            section.insertAt = end;
+        }
+        if (headers.isEmpty()) global.insertAt = length;
+        this.text = text;
+        this.length = length;
+        this.lineSeparator = lineSeparator(text, length);
+        this.ending = terminated ? "" : ending(text, length, lineSeparator);
+        this.global = global;
+        this.sections = sections;
+        this.headers = headers;
+        modifiedSections.clear();
+    }
+
+    /**
+     * Reads this {@link IniDocument} from the specified file, using the specified charset,
+     * see {@link #load(Reader)} and {@link IniProperties#load(Path, Charset)}.
+     *
+     * @param path the path of the file
+     * @param charset the charset of the file
+     * @throws IOException if an error occurred when reading the file
+     * @throws IllegalArgumentException if a malformed Unicode escape appears in the file
+     * @throws NullPointerException if {@code path} or {@code charset} is {@code null}
+     */
+    public void load(Path path, Charset charset) throws IOException {
+        Objects.requireNonNull(charset, "Charset");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            load(ByteBufferReader.open(channel, charset));
+        }
+    }
+
+    private static int lineEnd(char[] text, int start, int end) {
+        if (end > start && text[end - 1] == '\n') end --;
+        if (end > start && text[end - 1] == '\r') end --;
+        return end;
+    }
+
+    /**
+     * Returns the line separators completing the last line of the text, for appending lines to it.
+     * A single one is not always enough, for example after a comment sign in the middle of a line.
+     */
+    private String ending(char[] text, int length, String lineSeparator) throws IOException {
+        String ending = lineSeparator;
+        for (int count = 1; count <= 2; count ++, ending += lineSeparator) {
+            char[] probe = Arrays.copyOf(text, length + ending.length());
+            ending.getChars(0, ending.length(), probe, length);
+            IniTokenizer tokenizer = new IniTokenizer(probe, 0, probe.length, dialect);
+            tokenizer.setPartial(true);
+            while (tokenizer.next() != IniTokenizer.END) continue;
+            if (tokenizer.atLineStart()) return ending;
+        }
+        return lineSeparator;
+    }
+
+    private static String lineSeparator(char[] text, int length) {
+        for (int i = 0; i < length; i ++) {
+            if (text[i] == '\n') return "\n";
+            else if (text[i] == '\r') return i + 1 < length && text[i + 1] == '\n' ? "\r\n" : "\r";
+        }
+        return "\n";
+    }
+
+    private Section section(String sectionName) {
+        return sectionName == null ? global : sections.get(sectionName);
+    }
+
+    /**
+     * Returns the value of the specified key in the specified section.
+     *
+     * @param sectionName the section name, or {@code null} for the global properties
+     * @param key the key
+     * @return the value, or {@code null} if the section does not contain the key
+     */
+    public String get(String sectionName, String key) {
+        Section section = section(sectionName);
+        if (section == null) return null;
+        Entry entry = section.entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Sets the value of the specified key in the specified section,
+     * adding the entry, and the section, if they do not exist.
+     *
+     * @param sectionName the section name, or {@code null} for the global properties
+     * @param key the key
+     * @param value the value
+     * @return the previous value, or {@code null} if the section did not contain the key
+     * @throws NullPointerException if {@code key} or {@code value} is {@code null}
+     */
+    public String set(String sectionName, String key, String value) {
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(value, "value cannot be null");
+        Section section = section(sectionName);
+        if (section == null) sections.put(sectionName, section = new Section(sectionName, true));
+        Entry entry = section.entries.get(key);
+        String previous = null;
+        if (entry == null) {
+            section.entries.put(key, entry = new Entry(key));
+            section.addedEntries.add(entry);
+        }
+        else {
+            previous = entry.value;
+            if (entry.start != -1) section.modifiedEntries.add(entry);
+        }
+        entry.value = value;
+        modifiedSections.add(section);
+        return previous;
+    }
+
+    /**
+     * Removes the specified key from the specified section.
+     *
+     * @param sectionName the section name, or {@code null} for the global properties
+     * @param key the key
+     * @return the previous value, or {@code null} if the section did not contain the key
+     */
+    public String remove(String sectionName, String key) {
+        Section section = section(sectionName);
+        if (section == null) return null;
+        Entry entry = section.entries.remove(key);
+        if (entry == null) return null;
+        if (entry.start == -1) section.addedEntries.remove(entry);
+        else {
+            entry.removed = true;
+            section.modifiedEntries.add(entry);
+            modifiedSections.add(section);
+        }
+        return entry.value;
+    }
+
+    /**
+     * Removes the specified section. Removing the global properties removes all their entries.
+     *
+     * @param sectionName the section name, or {@code null} for the global properties
+     * @return whether the section existed
+     */
+    public boolean removeSection(String sectionName) {
+        if (sectionName == null) {
+            boolean removed = !global.entries.isEmpty();
+            for (String key : new ArrayList<>(global.entries.keySet())) {
+                remove(null, key);
+            }
+            return removed;
+        }
+        Section section = sections.remove(sectionName);
+        if (section == null) return false;
+        section.removed = true;
+        if (section.added) modifiedSections.remove(section);
+        else modifiedSections.add(section);
+        return true;
+    }
+
+    /**
+     * Returns the names of the sections of this {@link IniDocument}, in document order,
+     * without the global properties.
+     * @return an unmodifiable view of the section names
+     */
+    public Set<String> sectionNames() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    /**
+     * Returns the keys of the specified section, in document order.
+     * @param sectionName the section name, or {@code null} for the global properties
+     * @return an unmodifiable view of the keys, empty if the section does not exist
+     */
+    public Set<String> keys(String sectionName) {
+        Section section = section(sectionName);
+        return section == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(section.entries.keySet());
+    }
+
+    /**
+     * Writes this {@link IniDocument} to the output character stream,
+     * the loaded text with the edits applied.
+     * After the document has been written, the stream is flushed.
+     * The stream remains open after this method returns.
+     *
+     * @param writer the output character stream
+     * @throws IOException if an error occurred when writing to the output stream
+     * @throws NullPointerException if {@code writer} is {@code null}
+     */
+    public void store(Writer writer) throws IOException {
+        Objects.requireNonNull(writer, "writer cannot be null");
+        store(writer instanceof BufferedWriter ? writer : new BufferedWriter(writer), false);
+    }
+
+    /**
+     * Writes this {@link IniDocument} to the output stream, using the specified charset.
+     * Unless the charset is a Unicode encoding, characters less than {@code \u005Cu0020} and
+     * characters greater than {@code \u005Cu007E} in the edited keys, values and section names
+     * are written as {@code \u005Cu}<i>xxxx</i>, the rest is written as it was loaded.
+     * After the document has been written, the stream is flushed.
+     * The stream remains open after this method returns.
+     *
+     * @param out the output stream
+     * @param charset the charset
+     * @throws IOException if an error occurred when writing to the output stream
+     * @throws NullPointerException if {@code out} or {@code charset} is {@code null}
+     */
+    public void store(OutputStream out, Charset charset) throws IOException {
+        Objects.requireNonNull(out, "out cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        store(Utils.newWriter(out, charset), Utils.isEscUnicode(charset));
+    }
+
+    /**
+     * Writes this {@link IniDocument} to the specified file, using the specified charset,
+     * see {@link #store(OutputStream, Charset)}. The file is replaced atomically,
+     * see {@link IniProperties#store(Path, String, Charset, boolean)}.
+     *
+     * @param path the path of the file
+     * @param charset the charset
+     * @throws IOException if an error occurred when writing the file
+     * @throws NullPointerException if {@code path} or {@code charset} is {@code null}
+     */
+    public void store(Path path, Charset charset) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        AtomicFile.write(path, out -> store(out, charset), false);
+    }
+
+    private void store(Writer writer, boolean escUnicode) throws IOException {
+        List<Patch> patches = new ArrayList<>();
+        Set<Header> absolute = new LinkedHashSet<>();
+        for (Section section : modifiedSections) {
+            if (section.removed) {
+                for (Header header : section.headers) {
+                    patches.add(new Patch(header.start, header.end, REPLACE, null, null));
+                    // the next remaining header must not be resolved against another section
+                    int index = header.index + 1;
+                    while (index < headers.size() && headers.get(index).section.removed) index ++;
+                    if (index < headers.size() && headers.get(index).relative) absolute.add(headers.get(index));
+                }
+                continue;
+            }
+            for (Entry entry : section.modifiedEntries) {
+                if (entry.removed) {
+                    patches.add(new Patch(entry.start, entry.end, REPLACE, null, null));
+                    if (entry.duplicates != null) for (int[] span : entry.duplicates) {
+                        patches.add(new Patch(span[0], span[1], REPLACE, null, null));
+                    }
+                }
+                else if (!entry.value.equals(entry.original)) {
+                    patches.add(new Patch(entry.start, entry.lineEnd, REPLACE, null, entry));
+                }
+            }
+            if (section.added) patches.add(new Patch(length, length, APPEND, section, null));
+            else if (!section.addedEntries.isEmpty()) {
+                patches.add(new Patch(section.insertAt, section.insertAt, INSERT, section, null));
+            }
+        }
+        for (Header header : absolute) {
+            patches.add(new Patch(header.start, header.lineEnd, REPLACE, header.section, null));
+        }
+        // at the same position, entries of a section come before the next line,
+        // and new sections come after the entries added to the last one
+        patches.sort((a, b) -> a.start != b.start ? Integer.compare(a.start, b.start) : Integer.compare(a.kind, b.kind));
+        char[] scratch = new char[Utils.SCRATCH_SIZE];
+        int position = 0;
+        for (Patch patch : patches) {
+            writer.write(text, position, patch.start - position);
+            if (patch.entry != null) writeEntry(writer, patch.entry, escUnicode, scratch);
+            else if (patch.kind == REPLACE && patch.section != null) writeHeader(writer, patch.section, escUnicode, scratch);
+            else if (patch.section != null) {
+                // only the end of the text can be in the middle of a line
+                if (patch.start == length) writer.write(ending);
+                if (patch.kind == APPEND) {
+                    writeHeader(writer, patch.section, escUnicode, scratch);
+                    writer.write(lineSeparator);
+                }
+                for (Entry entry : patch.section.addedEntries) {
+                    writeEntry(writer, entry, escUnicode, scratch);
+                    writer.write(lineSeparator);
+                }
+            }
+            position = patch.end;
+        }
+        writer.write(text, position, length - position);
+        writer.flush();
+    }
+
+    private void writeHeader(Writer writer, Section section, boolean escUnicode, char[] scratch) throws IOException {
+        writer.write('[');
+        Utils.dumpString(dialect, writer, section.name, false, escUnicode, scratch);
+        writer.write(']');
+    }
+
+    private void writeEntry(Writer writer, Entry entry, boolean escUnicode, char[] scratch) throws IOException {
+        Utils.dumpString(dialect, writer, entry.key, true, escUnicode, scratch);
+        writer.write(dialect.delimiter());
+        Utils.dumpString(dialect, writer, entry.value, false, escUnicode, scratch);
+    }
+
+}
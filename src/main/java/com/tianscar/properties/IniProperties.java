@@ -1,14 +1,22 @@
 package com.tianscar.properties;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.InvalidPropertiesFormatException;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.tianscar.properties.Utils.loadIni;
@@ -85,6 +93,11 @@ import static com.tianscar.properties.Utils.storeIni;
  *
  * <p>This class is thread-safe: multiple threads can share a single
  * {@code IniProperties} object without the need for external synchronization.
+ * The store methods copy the sections while holding the monitor of the
+ * {@code IniProperties}, and encode and write the copy after releasing it,
+ * so a slow output does not block the other threads.
+ * The current section is shared by all threads, threads working on
+ * different sections use {@linkplain #section(String) section views} instead.
  *
  * @author  Karstian Lee
  */
@@ -93,14 +106,10 @@ public class IniProperties extends FilterProperties {
     private static final long serialVersionUID = 6700047722366213321L;
 
     /**
-     * The comment signs of the ini format.
+     * The dialect of this {@link IniProperties}, not final so that {@code readObject}
+     * can default it for streams written before dialects were added.
      */
-    private static final String[] COMMENT_SIGNS = new String[] { "#", ";" };
-
-    /**
-     * The delimiters of the ini format.
-     */
-    private static final String[] DELIMITERS = new String[] { "=", ":" };
+    private IniDialect dialect;
 
     /**
      * The sections of this {@link IniProperties}.
@@ -117,6 +126,11 @@ public class IniProperties extends FilterProperties {
      */
     private final AtomicReference<String> currentSectionName = new AtomicReference<>(null);
 
+    /**
+     * The encoded sections kept between byte stream stores, or {@code null} if incremental store is disabled.
+     */
+    private transient volatile IncrementalStore incrementalStore = null;
+
     /**
      * Switches the current section to the specified section,
      * depends on this section name and returns the previous section name,
@@ -126,10 +140,7 @@ public class IniProperties extends FilterProperties {
      * @return the previous section name
      */
     public String switchSection(String sectionName) {
-        if (sectionName != null && sectionName.startsWith(".")) {
-            if (this.currentSectionName.get() == null) sectionName = sectionName.substring(1);
-            else sectionName = this.currentSectionName.get() + sectionName;
-        }
+        if (dialect.isRelative(sectionName)) sectionName = dialect.resolve(this.currentSectionName.get(), sectionName);
 
         return this.currentSectionName.getAndSet(sectionName);
     }
@@ -144,7 +155,7 @@ public class IniProperties extends FilterProperties {
      * @return the previous section name
      */
     public String switchToParentSection() {
-        return switchSection(Utils.parentSectionName(currentSectionName()));
+        return switchSection(Utils.parentSectionName(currentSectionName(), dialect.sectionSeparator()));
     }
 
     /**
@@ -163,7 +174,7 @@ public class IniProperties extends FilterProperties {
      * @return the parent section, or the global section if parent section does not exist
      */
     public Properties parentSection(String sectionName) {
-        return getSection(Utils.parentSectionName(sectionName));
+        return getSection(Utils.parentSectionName(sectionName, dialect.sectionSeparator()));
     }
 
     /**
@@ -171,7 +182,7 @@ public class IniProperties extends FilterProperties {
      * @return true if the current section has parent section
      */
     public boolean hasParentSection() {
-        return Utils.hasParentSection(currentSectionName.get());
+        return Utils.hasParentSection(currentSectionName.get(), dialect.sectionSeparator());
     }
 
     /**
@@ -180,7 +191,7 @@ public class IniProperties extends FilterProperties {
      * @return the parent section name, or {@code null} if parent section does not exist
      */
     public String parentSectionName() {
-        return Utils.parentSectionName(currentSectionName.get());
+        return Utils.parentSectionName(currentSectionName.get(), dialect.sectionSeparator());
     }
 
     /**
@@ -188,7 +199,7 @@ public class IniProperties extends FilterProperties {
      * @return the plain section name
      */
     public String plainSectionName() {
-        return Utils.plainSectionName(currentSectionName.get());
+        return Utils.plainSectionName(currentSectionName.get(), dialect.sectionSeparator());
     }
 
     /**
@@ -196,7 +207,7 @@ public class IniProperties extends FilterProperties {
      * @return the plain parent section name
      */
     public String plainParentSectionName() {
-        return Utils.plainParentSectionName(currentSectionName.get());
+        return Utils.plainParentSectionName(currentSectionName.get(), dialect.sectionSeparator());
     }
 
     /**
@@ -207,6 +218,19 @@ public class IniProperties extends FilterProperties {
         return currentSectionName.get();
     }
 
+    /**
+     * Returns a view of the section with the specified name, which reads and writes that section
+     * without depending on nor changing the current section, see {@link SectionView}.
+     * Unlike {@link #switchSection(String)}, the section name is absolute, and the section
+     * is not created until a property is set through the view.
+     * If the section name is {@code null}, returns a view of the global properties.
+     * @param sectionName the section name
+     * @return the view of the section
+     */
+    public SectionView section(String sectionName) {
+        return new SectionView(this, sectionName);
+    }
+
     /**
      * Creates an empty {@link IniProperties} with no default values.
      */
@@ -225,19 +249,71 @@ public class IniProperties extends FilterProperties {
      *         zero.
      */
     public IniProperties(int initialCapacity) {
+        this(initialCapacity, IniDialect.DEFAULT);
+    }
+
+    /**
+     * Creates an empty {@link IniProperties} with no default values,
+     * using the specified dialect.
+     *
+     * @param dialect the dialect
+     * @throws NullPointerException if {@code dialect} is {@code null}.
+     */
+    public IniProperties(IniDialect dialect) {
+        this(8, dialect);
+    }
+
+    /**
+     * Creates an empty {@link IniProperties} with an
+     * initial size accommodating the specified number of elements without the
+     * need to dynamically resize, using the specified dialect.
+     *
+     * @param initialCapacity the section map will be sized to
+     *         accommodate this many elements
+     * @param dialect the dialect
+     * @throws IllegalArgumentException if the initial capacity is less than
+     *         zero.
+     * @throws NullPointerException if {@code dialect} is {@code null}.
+     */
+    public IniProperties(int initialCapacity, IniDialect dialect) {
         super(null);
+        this.dialect = Objects.requireNonNull(dialect, "dialect cannot be null");
         sections = new ConcurrentHashMap<>(initialCapacity);
         globalProperties = new AtomicReference<>(newSection());
     }
 
+    /**
+     * Returns the dialect of this {@link IniProperties}.
+     * @return the dialect
+     */
+    public IniDialect dialect() {
+        return dialect;
+    }
+
     Properties newSection() {
-        return new Properties();
+        return new TrackedSection();
     }
 
     private Properties currentSection() {
-        if (currentSectionName.get() == null) return globalProperties.get();
-        else if (getSection(currentSectionName.get()) == null) setSection(currentSectionName.get(), newSection());
-        return getSection(currentSectionName.get());
+        return getOrCreateSection(currentSectionName.get());
+    }
+
+    /**
+     * Returns the section with the specified name, creating it if it does not exist.
+     */
+    Properties getOrCreateSection(String sectionName) {
+        if (sectionName == null) return globalProperties.get();
+        else return sections.computeIfAbsent(sectionName, name -> newSection());
+    }
+
+    /**
+     * Returns the value of the specified key in the section with the specified name,
+     * without creating the section. Subclasses resolving keys elsewhere override this method,
+     * so that {@link SectionView}s resolve keys like them.
+     */
+    Object lookup(String sectionName, Object key) {
+        Properties section = getSection(sectionName);
+        return section == null ? null : section.get(key);
     }
 
     Properties setSection(String sectionName, Properties section) {
@@ -350,8 +426,9 @@ public class IniProperties extends FilterProperties {
      * written with a preceding {@code \} character.  For the
      * element, leading space characters, but not embedded or trailing
      * space characters, are written with a preceding {@code \}
-     * character. The key and element characters {@code #},
-     * {@code ;}, {@code =}, and {@code :} are written
+     * character. The key and element characters that are comment signs
+     * or delimiters of the {@linkplain #dialect() dialect} (by default {@code #},
+     * {@code ;}, {@code =}, and {@code :}) are written
      * with a preceding backslash to ensure that they are properly loaded.
      * <p>
      * After the entries have been written, the output stream is flushed.
@@ -367,8 +444,8 @@ public class IniProperties extends FilterProperties {
      */
     @Override
     public void store(Writer writer, String comments) throws IOException {
-        storeIni(this, COMMENT_SIGNS, DELIMITERS, writer instanceof BufferedWriter ? writer : new BufferedWriter(writer),
-                comments, false, true, "#", "=");
+        storeIni(this, dialect, writer instanceof BufferedWriter ? writer : new BufferedWriter(writer),
+                comments, false, true);
     }
 
     /**
@@ -410,9 +487,212 @@ public class IniProperties extends FilterProperties {
      */
     @Override
     public void store(OutputStream out, String comments) throws IOException {
-        Charset charset = Charset.defaultCharset();
-        storeIni(this, COMMENT_SIGNS, DELIMITERS, new BufferedWriter(new OutputStreamWriter(out, charset)),
-                comments, !charset.name().toLowerCase().contains("utf"), true, "#", "=");
+        store(out, comments, Charset.defaultCharset());
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the output stream in ini format suitable for
+     * using the {@link #load(InputStream, Charset) load(InputStream, Charset)}
+     * method, using the specified charset.
+     * <p>
+     * This method outputs the comments, properties keys and values in
+     * the same format as specified in
+     * {@link #store(java.io.Writer, java.lang.String) store(Writer)}.
+     * Unless the charset is a Unicode encoding, characters less than
+     * {@code \u005Cu0020} and characters greater than {@code \u005Cu007E}
+     * in property keys or values are written as {@code \u005Cu}<i>xxxx</i>
+     * for the appropriate hexadecimal value <i>xxxx</i>.
+     * UTF-8 and ISO 8859-1 are encoded straight into a byte buffer,
+     * without a {@link java.nio.charset.CharsetEncoder}.
+     * <p>
+     * After the entries have been written, the output stream is flushed.
+     * The output stream remains open after this method returns.
+     *
+     * @param   out      an output stream.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @param   charset   the charset.
+     * @throws     IOException if writing this {@code IniProperties} to the specified
+     *             output stream throws an {@code IOException}.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code out} or {@code charset} is {@code null}.
+     */
+    public void store(OutputStream out, String comments, Charset charset) throws IOException {
+        Objects.requireNonNull(out, "out cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        IncrementalStore incrementalStore = this.incrementalStore;
+        if (incrementalStore != null) incrementalStore.store(this, dialect, out, comments, charset);
+        else storeIni(this, dialect, Utils.newWriter(out, charset), comments, Utils.isEscUnicode(charset), true);
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the output stream like
+     * {@link #store(OutputStream, String, Charset) store(OutputStream, String, Charset)},
+     * encoding the sections in parallel on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}, see
+     * {@link #storeParallel(OutputStream, String, Charset, ForkJoinPool)}.
+     *
+     * @param   out      an output stream.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @param   charset   the charset.
+     * @throws     IOException if writing this {@code IniProperties} to the specified
+     *             output stream throws an {@code IOException}.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code out} or {@code charset} is {@code null}.
+     */
+    public void storeParallel(OutputStream out, String comments, Charset charset) throws IOException {
+        storeParallel(out, comments, charset, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the output stream like
+     * {@link #store(OutputStream, String, Charset) store(OutputStream, String, Charset)},
+     * encoding the sections in parallel on the specified pool.
+     * <p>
+     * The sections are split into chunks of about the same number of entries.
+     * Every chunk is encoded into its own buffer on the pool, and the buffers are
+     * written to the output stream in order, so the output is the same as a
+     * sequential store. Small inputs, and charsets writing a byte order mark
+     * such as {@code UTF-16}, are encoded on the calling thread.
+     * Incremental store is not used by this method, see {@link #setIncrementalStore(boolean)}.
+     * <p>
+     * After the entries have been written, the output stream is flushed.
+     * The output stream remains open after this method returns.
+     *
+     * @param   out      an output stream.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @param   charset   the charset.
+     * @param   pool   the pool to encode the sections on.
+     * @throws     IOException if writing this {@code IniProperties} to the specified
+     *             output stream throws an {@code IOException}.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code out}, {@code charset} or {@code pool} is {@code null}.
+     */
+    public void storeParallel(OutputStream out, String comments, Charset charset, ForkJoinPool pool) throws IOException {
+        Objects.requireNonNull(out, "out cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        Objects.requireNonNull(pool, "pool cannot be null");
+        ParallelIniStore.store(this, dialect, out, comments, charset, pool);
+    }
+
+    /**
+     * Enables or disables incremental store for this {@link IniProperties}.
+     * <p>
+     * When enabled, the methods storing to a byte stream or a file, such as
+     * {@link #store(OutputStream, String, Charset)} and {@link #store(Path, String, Charset, boolean)},
+     * keep the encoded bytes of every section, and the next store only encodes the sections
+     * modified since, by any means: through this {@code IniProperties}, through the sections
+     * returned by {@link #sections()} and {@link #globalProperties()}, or by replacing a section.
+     * This includes changes made through the collection views of a section and their iterators and entries.
+     * The output is the same as with incremental store disabled, so the cost of a store
+     * becomes proportional to the size of the modified sections plus the copying of the others,
+     * at the price of keeping the encoded bytes of all sections in memory.
+     * <p>
+     * Incremental store is disabled by default, disabling it discards the kept bytes.
+     *
+     * @param incremental whether to enable incremental store
+     */
+    public synchronized void setIncrementalStore(boolean incremental) {
+        if (!incremental) incrementalStore = null;
+        else if (incrementalStore == null) incrementalStore = new IncrementalStore();
+    }
+
+    /**
+     * Returns whether incremental store is enabled for this {@link IniProperties},
+     * see {@link #setIncrementalStore(boolean)}.
+     * @return whether incremental store is enabled
+     */
+    public boolean isIncrementalStore() {
+        return incrementalStore != null;
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the specified file, like
+     * {@link #store(OutputStream, String, Charset) store(OutputStream, String, Charset)}
+     * using the ISO 8859-1 character encoding, see {@link #store(Path, String, Charset, boolean)}.
+     *
+     * @param   path   the path of the file.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @throws     IOException if an error occurred when writing the file.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code path} is {@code null}.
+     */
+    public void store(Path path, String comments) throws IOException {
+        store(path, comments, StandardCharsets.ISO_8859_1, false);
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the specified file, like
+     * {@link #store(OutputStream, String, Charset) store(OutputStream, String, Charset)}.
+     * <p>
+     * The file is replaced atomically: the ini file is written to a temporary file
+     * in the same directory, which is then moved over the specified file. Other
+     * readers of the file see either the previous or the new content, never a
+     * partially written one, and if the write fails, the previous content is kept.
+     * If the file exists, symbolic links to it are followed, so the file they point to is
+     * replaced, and the new file keeps its POSIX permissions, and its owner and group
+     * where the platform allows.
+     *
+     * @param   path   the path of the file.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @param   charset   the charset.
+     * @param   sync   whether to force the new content to the storage device before
+     *                 replacing the file, so that it survives a system crash.
+     * @throws     IOException if an error occurred when writing the file, or if
+     *             the file system does not support atomic moves.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code path} or {@code charset} is {@code null}.
+     */
+    public void store(Path path, String comments, Charset charset, boolean sync) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        AtomicFile.write(path, out -> store(out, comments, charset), sync);
+    }
+
+    /**
+     * Writes this {@link IniProperties} to the specified file asynchronously, like
+     * {@link #store(OutputStream, String) store(OutputStream, String)}, on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}, see {@link #storeAsync(Path, String, Executor)}.
+     *
+     * @param   path   the path of the file.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @return  a future completed with this {@code IniProperties} when the file has been written.
+     * @throws  NullPointerException  if {@code path} is {@code null}.
+     */
+    public CompletableFuture<IniProperties> storeAsync(Path path, String comments) {
+        return storeAsync(path, comments, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Writes this {@link IniProperties} to the specified file asynchronously, in the same format as
+     * {@link #store(OutputStream, String) store(OutputStream, String)}.
+     * The file is created if it does not exist, and truncated otherwise.
+     * <p>
+     * This method returns immediately. The content is formatted on the specified executor,
+     * then written through an {@link java.nio.channels.AsynchronousFileChannel},
+     * so no thread blocks on the file.
+     * <p>
+     * If the file cannot be written, the future is completed exceptionally with the {@code IOException}.
+     *
+     * @param   path   the path of the file.
+     * @param   comments   a description of the {@code IniProperties}.
+     * @param   executor   the executor to format the content on.
+     * @return  a future completed with this {@code IniProperties} when the file has been written.
+     * @throws  NullPointerException  if {@code path} or {@code executor} is {@code null}.
+     */
+    public CompletableFuture<IniProperties> storeAsync(Path path, String comments, Executor executor) {
+        Objects.requireNonNull(path, "Path");
+        Objects.requireNonNull(executor, "Executor");
+        return AsyncIniFile.store(this, path, comments, executor);
     }
 
     /**
@@ -513,6 +793,10 @@ public class IniProperties extends FilterProperties {
      * <p> Unmappable characters for the specified charset will be encoded as
      * numeric character references.
      *
+     * <p>The document is indented, see
+     * {@link #storeToXML(OutputStream, String, Charset, boolean) storeToXML(OutputStream, String, Charset, boolean)}
+     * for compact output.
+     *
      * <p>The specified stream remains open after this method returns.
      *
      * @param os        the output stream on which to emit the XML document.
@@ -531,11 +815,169 @@ public class IniProperties extends FilterProperties {
      */
     @Override
     public void storeToXML(OutputStream os, String comment, Charset charset) throws IOException {
+        storeToXML(os, comment, charset, false);
+    }
+
+    /**
+     * Emits an XML document representing all of the properties contained
+     * in this {@link IniProperties}, using the specified charset, like
+     * {@link #storeToXML(OutputStream, String, Charset) storeToXML(OutputStream, String, Charset)},
+     * indented or compact.
+     * <p>
+     * A compact document has no line breaks nor indentation between elements, which makes it
+     * smaller and faster to write, for documents exchanged between programs rather than read by people.
+     * The documents load to the same properties either way.
+     *
+     * <p>The specified stream remains open after this method returns.
+     *
+     * @param os        the output stream on which to emit the XML document.
+     * @param comment   a description of the {@code IniProperties}, or {@code null}
+     *                  if no comment is desired.
+     * @param charset   the charset
+     * @param compact   whether to emit a compact document rather than an indented one.
+     *
+     * @throws IOException if writing to the specified output stream
+     *         results in an {@code IOException}.
+     * @throws NullPointerException if {@code os} or {@code charset} is {@code null}.
+     * @throws ClassCastException  if this {@code Properties} object
+     *         contains any keys or values that are not {@code Strings}.
+     * @see    #loadFromXML(InputStream)
+     */
+    public void storeToXML(OutputStream os, String comment, Charset charset, boolean compact) throws IOException {
         Objects.requireNonNull(os, "OutputStream");
         Objects.requireNonNull(charset, "Charset");
         if (!(os instanceof BufferedOutputStream)) os = new BufferedOutputStream(os);
         IniPropertiesHandler handler = new IniPropertiesHandler();
-        handler.store(this, os, comment, charset);
+        handler.store(this, os, comment, charset, compact);
+    }
+
+    /**
+     * Emits an XML document representing all of the properties contained
+     * in this {@link IniProperties}, using the specified charset, like
+     * {@link #storeToXML(OutputStream, String, Charset) storeToXML(OutputStream, String, Charset)},
+     * encoding the sections in parallel on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}, see
+     * {@link #storeToXMLParallel(OutputStream, String, Charset, ForkJoinPool)}.
+     *
+     * @param os        the output stream on which to emit the XML document.
+     * @param comment   a description of the {@code IniProperties}, or {@code null}
+     *                  if no comment is desired.
+     * @param charset   the charset
+     *
+     * @throws IOException if writing to the specified output stream
+     *         results in an {@code IOException}.
+     * @throws NullPointerException if {@code os} or {@code charset} is {@code null}.
+     * @throws ClassCastException  if this {@code Properties} object
+     *         contains any keys or values that are not {@code Strings}.
+     */
+    public void storeToXMLParallel(OutputStream os, String comment, Charset charset) throws IOException {
+        storeToXMLParallel(os, comment, charset, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Emits an XML document representing all of the properties contained
+     * in this {@link IniProperties}, using the specified charset, like
+     * {@link #storeToXML(OutputStream, String, Charset) storeToXML(OutputStream, String, Charset)},
+     * encoding the sections in parallel on the specified pool.
+     * <p>
+     * The top level sections, with their nested sections, are split into chunks of
+     * about the same number of entries. Every chunk is encoded into its own buffer
+     * on the pool, and the buffers are written to the output stream in order,
+     * so the document is the same as the one written by
+     * {@link #storeToXML(OutputStream, String, Charset) storeToXML(OutputStream, String, Charset)}.
+     * Small documents, and charsets writing a byte order mark such as {@code UTF-16},
+     * are encoded on the calling thread.
+     *
+     * <p>The specified stream remains open after this method returns.
+     *
+     * @param os        the output stream on which to emit the XML document.
+     * @param comment   a description of the {@code IniProperties}, or {@code null}
+     *                  if no comment is desired.
+     * @param charset   the charset
+     * @param pool      the pool to encode the sections on.
+     *
+     * @throws IOException if writing to the specified output stream
+     *         results in an {@code IOException}.
+     * @throws NullPointerException if {@code os}, {@code charset} or {@code pool} is {@code null}.
+     * @throws ClassCastException  if this {@code Properties} object
+     *         contains any keys or values that are not {@code Strings}.
+     */
+    public void storeToXMLParallel(OutputStream os, String comment, Charset charset, ForkJoinPool pool) throws IOException {
+        storeToXMLParallel(os, comment, charset, false, pool);
+    }
+
+    /**
+     * Emits an XML document representing all of the properties contained
+     * in this {@link IniProperties}, using the specified charset, like
+     * {@link #storeToXML(OutputStream, String, Charset, boolean) storeToXML(OutputStream, String, Charset, boolean)},
+     * encoding the sections in parallel on the specified pool,
+     * see {@link #storeToXMLParallel(OutputStream, String, Charset, ForkJoinPool)}.
+     *
+     * <p>The specified stream remains open after this method returns.
+     *
+     * @param os        the output stream on which to emit the XML document.
+     * @param comment   a description of the {@code IniProperties}, or {@code null}
+     *                  if no comment is desired.
+     * @param charset   the charset
+     * @param compact   whether to emit a compact document rather than an indented one.
+     * @param pool      the pool to encode the sections on.
+     *
+     * @throws IOException if writing to the specified output stream
+     *         results in an {@code IOException}.
+     * @throws NullPointerException if {@code os}, {@code charset} or {@code pool} is {@code null}.
+     * @throws ClassCastException  if this {@code Properties} object
+     *         contains any keys or values that are not {@code Strings}.
+     */
+    public void storeToXMLParallel(OutputStream os, String comment, Charset charset, boolean compact,
+                                   ForkJoinPool pool) throws IOException {
+        Objects.requireNonNull(os, "OutputStream");
+        Objects.requireNonNull(charset, "Charset");
+        Objects.requireNonNull(pool, "pool cannot be null");
+        if (!(os instanceof BufferedOutputStream)) os = new BufferedOutputStream(os);
+        IniPropertiesHandler handler = new IniPropertiesHandler();
+        handler.store(this, os, comment, charset, compact, pool);
+    }
+
+    /**
+     * Emits an XML document representing all of the properties contained
+     * in this {@link IniProperties} to the specified file, using the UTF-8
+     * character encoding, see {@link #storeToXML(Path, String, Charset, boolean)}.
+     *
+     * @param path the path of the file.
+     * @param comment a description of the properties list, or {@code null}
+     *        if no comment is desired.
+     * @throws IOException if an error occurred when writing the file.
+     * @throws ClassCastException  if this {@code IniProperties} object
+     *         contains any keys or values that are not {@code Strings}.
+     * @throws NullPointerException if {@code path} is {@code null}.
+     */
+    public void storeToXML(Path path, String comment) throws IOException {
+        storeToXML(path, comment, StandardCharsets.UTF_8, false);
+    }
+
+    /**
+     * Emits an XML document representing all of the properties contained
+     * in this {@link IniProperties} to the specified file, like
+     * {@link #storeToXML(OutputStream, String, Charset) storeToXML(OutputStream, String, Charset)}.
+     * <p>
+     * The file is replaced atomically, see {@link #store(Path, String, Charset, boolean)}.
+     *
+     * @param path the path of the file.
+     * @param comment a description of the properties list, or {@code null}
+     *        if no comment is desired.
+     * @param charset the charset.
+     * @param sync whether to force the new content to the storage device before
+     *        replacing the file, so that it survives a system crash.
+     * @throws IOException if an error occurred when writing the file, or if
+     *         the file system does not support atomic moves.
+     * @throws ClassCastException  if this {@code IniProperties} object
+     *         contains any keys or values that are not {@code Strings}.
+     * @throws NullPointerException if {@code path} or {@code charset} is {@code null}.
+     */
+    public void storeToXML(Path path, String comment, Charset charset, boolean sync) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        AtomicFile.write(path, out -> storeToXML(out, comment, charset), sync);
     }
 
     /**
@@ -558,7 +1000,33 @@ public class IniProperties extends FilterProperties {
      */
     @Override
     public synchronized void load(InputStream inStream) throws IOException {
-        loadIni(this, COMMENT_SIGNS, DELIMITERS, new BufferedReader(new InputStreamReader(inStream, "ISO-8859-1")));
+        loadIni(this, dialect, new InputStreamReader(inStream, "ISO-8859-1"));
+    }
+
+    /**
+     * Reads an ini file from the input byte stream, using the specified charset.
+     * Malformed or unmappable input is replaced with the replacement character.
+     * <p>
+     * If the stream starts with a UTF-8, UTF-16BE or UTF-16LE byte order mark,
+     * the byte order mark is skipped and the charset it indicates is used instead,
+     * unless the specified charset is ISO 8859-1. UTF-8 input is decoded by a dedicated
+     * decoder, so loading a file written in UTF-8 without Unicode escapes is usually
+     * faster than loading its escaped ISO 8859-1 form.
+     * <p>
+     * The specified stream remains open after this method returns.
+     *
+     * @param      inStream   the input stream.
+     * @param      charset   the charset of the stream.
+     * @throws     IOException  if an error occurred when reading from the
+     *             input stream.
+     * @throws     IllegalArgumentException if the input stream contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code inStream} or {@code charset} is {@code null}.
+     */
+    public synchronized void load(InputStream inStream, Charset charset) throws IOException {
+        Objects.requireNonNull(inStream, "InputStream");
+        Objects.requireNonNull(charset, "Charset");
+        loadIni(this, dialect, Utils.newReader(inStream, charset));
     }
 
     /**
@@ -610,7 +1078,409 @@ public class IniProperties extends FilterProperties {
      */
     @Override
     public synchronized void load(Reader reader) throws IOException {
-        loadIni(this, COMMENT_SIGNS, DELIMITERS, reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+        loadIni(this, dialect, reader);
+    }
+
+    /**
+     * Reads an ini file from the specified file. The file is assumed to use
+     * the ISO 8859-1 character encoding, the same as
+     * {@link #load(InputStream) load(InputStream)}.
+     * <p>
+     * Large files are memory-mapped and parsed directly from the mapped buffer.
+     *
+     * @param      path   the path of the file.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     IllegalArgumentException if the file contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code path} is {@code null}.
+     */
+    public synchronized void load(Path path) throws IOException {
+        load(path, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads an ini file from the specified file, using the specified charset.
+     * Malformed or unmappable input is replaced with the replacement character.
+     * A byte order mark is handled the same as {@link #load(InputStream, Charset) load(InputStream, Charset)}.
+     * <p>
+     * Large files are memory-mapped and parsed directly from the mapped buffer.
+     *
+     * @param      path   the path of the file.
+     * @param      charset   the charset of the file.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     IllegalArgumentException if the file contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code path} or {@code charset} is {@code null}.
+     */
+    public synchronized void load(Path path, Charset charset) throws IOException {
+        Objects.requireNonNull(charset, "Charset");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            load(channel, charset);
+        }
+    }
+
+    /**
+     * Reads an ini file from the specified file channel, starting at its current position.
+     * The file is assumed to use the ISO 8859-1 character encoding, the same as
+     * {@link #load(InputStream) load(InputStream)}.
+     * <p>
+     * Large files are memory-mapped and parsed directly from the mapped buffer.
+     * The position of the channel is advanced to its end, and the channel
+     * remains open after this method returns.
+     *
+     * @param      channel   the file channel.
+     * @throws     IOException  if an error occurred when reading from the channel.
+     * @throws     IllegalArgumentException if the channel contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code channel} is {@code null}.
+     */
+    public synchronized void load(FileChannel channel) throws IOException {
+        load(channel, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads an ini file from the specified file channel, starting at its current position,
+     * using the specified charset.
+     * Malformed or unmappable input is replaced with the replacement character.
+     * A byte order mark is handled the same as {@link #load(InputStream, Charset) load(InputStream, Charset)}.
+     * <p>
+     * Large files are memory-mapped and parsed directly from the mapped buffer.
+     * The position of the channel is advanced to its end, and the channel
+     * remains open after this method returns.
+     *
+     * @param      channel   the file channel.
+     * @param      charset   the charset of the channel.
+     * @throws     IOException  if an error occurred when reading from the channel.
+     * @throws     IllegalArgumentException if the channel contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code channel} or {@code charset} is {@code null}.
+     */
+    public synchronized void load(FileChannel channel, Charset charset) throws IOException {
+        Objects.requireNonNull(charset, "Charset");
+        loadIni(this, dialect, ByteBufferReader.open(channel, charset));
+    }
+
+    /**
+     * Reads an ini file from the input character stream like
+     * {@link #load(Reader) load(Reader)}, but defers parsing the entries
+     * of each section until the section is first used.
+     * <p>
+     * The whole stream is read into memory and scanned once for section headers.
+     * The sections (and the global properties) are then available immediately,
+     * but each one only parses its part of the text the first time one of its methods is called,
+     * for example through {@link #getProperty(String) getProperty} after
+     * {@link #switchSection(String) switchSection}, or on a section returned by
+     * {@code sections().get}. This is faster and uses less memory
+     * when only a few sections of a large file are actually read.
+     * <p>
+     * The text is kept in memory until every section has been parsed.
+     * The specified stream remains open after this method returns.
+     *
+     * @param   reader   the input character stream.
+     * @throws  IOException  if an error occurred when reading from the
+     *          input stream.
+     * @throws  IllegalArgumentException if a malformed Unicode escape
+     *          appears in the input. The error is thrown when the section
+     *          containing it is parsed.
+     * @throws  NullPointerException if {@code reader} is {@code null}.
+     */
+    public synchronized void loadLazily(Reader reader) throws IOException {
+        Utils.loadIniLazily(this, dialect, reader);
+    }
+
+    /**
+     * Reads an ini file from the specified file, using the specified charset, like
+     * {@link #load(Path, Charset) load(Path, Charset)}, but defers parsing the entries
+     * of each section until the section is first used, see {@link #loadLazily(Reader)}.
+     *
+     * @param      path   the path of the file.
+     * @param      charset   the charset of the file.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     IllegalArgumentException if a malformed Unicode escape
+     *             appears in the file. The error is thrown when the section
+     *             containing it is parsed.
+     * @throws     NullPointerException if {@code path} or {@code charset} is {@code null}.
+     */
+    public synchronized void loadLazily(Path path, Charset charset) throws IOException {
+        Objects.requireNonNull(charset, "Charset");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loadLazily(ByteBufferReader.open(channel, charset));
+        }
+    }
+
+    /**
+     * Reads an ini file from the input character stream like
+     * {@link #load(Reader) load(Reader)}, parsing it in parallel on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}.
+     *
+     * @see #loadParallel(Reader, ForkJoinPool)
+     *
+     * @param   reader   the input character stream.
+     * @throws  IOException  if an error occurred when reading from the
+     *          input stream.
+     * @throws  IllegalArgumentException if a malformed Unicode escape
+     *          appears in the input.
+     * @throws  NullPointerException if {@code reader} is {@code null}.
+     */
+    public synchronized void loadParallel(Reader reader) throws IOException {
+        loadParallel(reader, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads an ini file from the input character stream like
+     * {@link #load(Reader) load(Reader)}, parsing it in parallel on the specified pool.
+     * <p>
+     * The whole stream is read into memory and split into chunks at lines starting
+     * with {@code [}. The chunks are parsed concurrently, then merged in order,
+     * resolving relative section names as they would be by a sequential load.
+     * The result is the same as {@link #load(Reader) load(Reader)}.
+     * Small inputs are parsed on the calling thread.
+     * <p>
+     * The specified stream remains open after this method returns.
+     *
+     * @param   reader   the input character stream.
+     * @param   pool   the pool to parse the chunks on.
+     * @throws  IOException  if an error occurred when reading from the
+     *          input stream.
+     * @throws  IllegalArgumentException if a malformed Unicode escape
+     *          appears in the input.
+     * @throws  NullPointerException if {@code reader} or {@code pool} is {@code null}.
+     */
+    public synchronized void loadParallel(Reader reader, ForkJoinPool pool) throws IOException {
+        Objects.requireNonNull(pool, "pool cannot be null");
+        Utils.loadIniParallel(this, dialect, reader, pool);
+    }
+
+    /**
+     * Reads an ini file from the specified file, using the specified charset, like
+     * {@link #load(Path, Charset) load(Path, Charset)}, parsing it in parallel on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}, see {@link #loadParallel(Reader, ForkJoinPool)}.
+     *
+     * @param      path   the path of the file.
+     * @param      charset   the charset of the file.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     IllegalArgumentException if a malformed Unicode escape
+     *             appears in the file.
+     * @throws     NullPointerException if {@code path} or {@code charset} is {@code null}.
+     */
+    public synchronized void loadParallel(Path path, Charset charset) throws IOException {
+        Objects.requireNonNull(charset, "Charset");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            loadParallel(ByteBufferReader.open(channel, charset), ForkJoinPool.commonPool());
+        }
+    }
+
+    /**
+     * Reads an ini file from the specified file asynchronously, like
+     * {@link #load(Path) load(Path)}, parsing it on the
+     * {@linkplain ForkJoinPool#commonPool() common pool}, see {@link #loadAsync(Path, Charset, Executor)}.
+     *
+     * @param      path   the path of the file.
+     * @return     a future completed with this {@code IniProperties} when the file has been loaded.
+     * @throws     NullPointerException if {@code path} is {@code null}.
+     */
+    public CompletableFuture<IniProperties> loadAsync(Path path) {
+        return loadAsync(path, StandardCharsets.ISO_8859_1, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads an ini file from the specified file asynchronously, using the specified charset, like
+     * {@link #load(Path, Charset) load(Path, Charset)}.
+     * <p>
+     * This method returns immediately. The file is read through an
+     * {@link java.nio.channels.AsynchronousFileChannel}, and each buffer is decoded and parsed
+     * on the specified executor as soon as it arrives, so no thread blocks on the file.
+     * Unlike {@link #load(Path, Charset) load(Path, Charset)}, this method does not lock this
+     * {@code IniProperties} while loading, sections are added as they are parsed.
+     * <p>
+     * If the file cannot be read, or contains a malformed Unicode escape sequence,
+     * the future is completed exceptionally with the {@code IOException} or
+     * {@code IllegalArgumentException}.
+     *
+     * @param      path   the path of the file.
+     * @param      charset   the charset of the file.
+     * @param      executor   the executor to parse the file on.
+     * @return     a future completed with this {@code IniProperties} when the file has been loaded.
+     * @throws     NullPointerException if {@code path}, {@code charset} or {@code executor} is {@code null}.
+     */
+    public CompletableFuture<IniProperties> loadAsync(Path path, Charset charset, Executor executor) {
+        Objects.requireNonNull(path, "Path");
+        Objects.requireNonNull(charset, "Charset");
+        Objects.requireNonNull(executor, "Executor");
+        return AsyncIniFile.load(this, dialect, path, charset, executor);
+    }
+
+    /**
+     * Loads all regular files in the specified directory whose names match the specified glob,
+     * like {@link #load(Path) load(Path)}, parsing them concurrently.
+     * <p>
+     * On Java 21 or later each file is loaded on its own virtual thread, otherwise on a pool
+     * bounded to twice the number of processors. The threads are released before this method returns.
+     * <p>
+     * The returned map is sorted by path, so merging its values in iteration order
+     * gives precedence to the files last in name order:
+     * <pre>
+     * IniProperties merged = new IniProperties();
+     * for (IniProperties ini : IniProperties.loadAll(dir, "*.ini").values()) merged.merge(ini);
+     * </pre>
+     *
+     * @param      dir   the directory.
+     * @param      glob   the glob pattern the file names must match, see {@link java.nio.file.FileSystem#getPathMatcher(String)}.
+     * @return     the loaded files, sorted by path.
+     * @throws     IOException  if an error occurred when listing the directory or reading from a file.
+     * @throws     IllegalArgumentException if a file contains a
+     *             malformed Unicode escape sequence.
+     * @throws     java.util.regex.PatternSyntaxException if the glob is invalid.
+     * @throws     NullPointerException if {@code dir} or {@code glob} is {@code null}.
+     */
+    public static SortedMap<Path, IniProperties> loadAll(Path dir, String glob) throws IOException {
+        Objects.requireNonNull(glob, "glob cannot be null");
+        return DirectoryIniLoader.loadAll(dir, glob);
+    }
+
+    /**
+     * Loads all regular files in the specified directory whose names match the specified glob,
+     * like {@link #load(Path) load(Path)}, parsing them concurrently on the specified executor,
+     * see {@link #loadAll(Path, String)}.
+     * <p>
+     * If several files fail to load, the exception of the first one in name order is thrown,
+     * with the others suppressed.
+     *
+     * @param      dir   the directory.
+     * @param      glob   the glob pattern the file names must match, see {@link java.nio.file.FileSystem#getPathMatcher(String)}.
+     * @param      executor   the executor to load the files on.
+     * @return     the loaded files, sorted by path.
+     * @throws     IOException  if an error occurred when listing the directory or reading from a file.
+     * @throws     IllegalArgumentException if a file contains a
+     *             malformed Unicode escape sequence.
+     * @throws     java.util.regex.PatternSyntaxException if the glob is invalid.
+     * @throws     NullPointerException if {@code dir}, {@code glob} or {@code executor} is {@code null}.
+     */
+    public static SortedMap<Path, IniProperties> loadAll(Path dir, String glob, Executor executor) throws IOException {
+        Objects.requireNonNull(glob, "glob cannot be null");
+        Objects.requireNonNull(executor, "Executor");
+        return DirectoryIniLoader.loadAll(dir, glob, executor);
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the output stream in the binary snapshot format,
+     * suitable for using the {@link #readSnapshot(InputStream) readSnapshot(InputStream)} method.
+     * <p>
+     * A snapshot holds the sections as they are, with section names resolved and
+     * escapes already processed, so reading it back does not parse any ini text.
+     * Every distinct section name, key and value is stored once, and the snapshot is
+     * protected by a checksum. Unlike an ini file, a snapshot preserves empty sections.
+     * <p>
+     * After the snapshot has been written, the output stream is flushed.
+     * The output stream remains open after this method returns.
+     *
+     * @param   out      an output stream.
+     * @throws     IOException if writing to the specified output stream throws an {@code IOException}.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code out} is {@code null}.
+     */
+    public void writeSnapshot(OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "out cannot be null");
+        IniSnapshot.write(this, out);
+    }
+
+    /**
+     * Writes all sections (includes the global properties) in this
+     * {@link IniProperties} to the specified file in the binary snapshot format,
+     * see {@link #writeSnapshot(OutputStream)}. The file is replaced atomically,
+     * see {@link #store(Path, String, Charset, boolean)}.
+     *
+     * @param   path   the path of the file.
+     * @throws     IOException if an error occurred when writing the file.
+     * @throws     ClassCastException  if this {@code IniProperties} object
+     *             contains any keys or values that are not {@code Strings}.
+     * @throws     NullPointerException  if {@code path} is {@code null}.
+     */
+    public void writeSnapshot(Path path) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        AtomicFile.write(path, this::writeSnapshot, false);
+    }
+
+    /**
+     * Reads a binary snapshot written by {@link #writeSnapshot(OutputStream)} from the input stream.
+     * The sections of the snapshot are added to this {@link IniProperties} like the sections of
+     * an ini file read by {@link #load(Reader) load(Reader)}, replacing the global properties and
+     * the sections with the same names.
+     * <p>
+     * The whole snapshot is read and verified before this {@code IniProperties} is modified,
+     * an invalid snapshot leaves it unchanged.
+     * The specified stream remains open after this method returns.
+     *
+     * @param      in   the input stream.
+     * @throws     InvalidPropertiesFormatException if the stream does not contain a valid
+     *             snapshot, or contains a snapshot of an unsupported version.
+     * @throws     IOException  if an error occurred when reading from the input stream.
+     * @throws     NullPointerException if {@code in} is {@code null}.
+     */
+    public synchronized void readSnapshot(InputStream in) throws IOException {
+        Objects.requireNonNull(in, "in cannot be null");
+        IniSnapshot.read(this, in);
+    }
+
+    /**
+     * Reads a binary snapshot from the specified file, see {@link #readSnapshot(InputStream)}.
+     * Large files are memory-mapped and read directly from the mapped buffer.
+     *
+     * @param      path   the path of the file.
+     * @throws     InvalidPropertiesFormatException if the file is not a valid snapshot,
+     *             or is a snapshot of an unsupported version.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     NullPointerException if {@code path} is {@code null}.
+     */
+    public synchronized void readSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            IniSnapshot.read(this, channel);
+        }
+    }
+
+    /**
+     * Reads an ini file from the specified file like {@link #load(Path) load(Path)},
+     * caching it as a binary snapshot, see {@link #loadCached(Path, Charset)}.
+     *
+     * @param      path   the path of the file.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     IllegalArgumentException if the file contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code path} is {@code null}.
+     */
+    public synchronized void loadCached(Path path) throws IOException {
+        loadCached(path, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads an ini file from the specified file, using the specified charset, like
+     * {@link #load(Path, Charset) load(Path, Charset)}, caching it as a binary snapshot,
+     * see {@link #writeSnapshot(OutputStream)}.
+     * <p>
+     * The snapshot is kept in the same directory as the file, in a file named like it
+     * with the suffix {@code .snapshot}. It records the size, last modified time and
+     * checksum of the content of the file, as well as the charset and the
+     * {@linkplain #dialect() dialect} it was parsed with. If they all still match,
+     * the snapshot is read instead of parsing the file, otherwise the file is parsed
+     * and the snapshot is replaced. The cache is best effort: a snapshot that cannot be
+     * read is ignored, and a failure to write one does not fail this method.
+     * <p>
+     * The content of the file is still read to verify its checksum, so the cache
+     * saves the cost of parsing the file, not the cost of reading it.
+     *
+     * @param      path   the path of the file.
+     * @param      charset   the charset of the file.
+     * @throws     IOException  if an error occurred when reading from the file.
+     * @throws     IllegalArgumentException if the file contains a
+     *             malformed Unicode escape sequence.
+     * @throws     NullPointerException if {@code path} or {@code charset} is {@code null}.
+     */
+    public synchronized void loadCached(Path path, Charset charset) throws IOException {
+        Objects.requireNonNull(path, "path cannot be null");
+        Objects.requireNonNull(charset, "Charset");
+        IniSnapshot.loadCached(this, dialect, path, charset);
     }
 
     /**
@@ -661,6 +1531,20 @@ public class IniProperties extends FilterProperties {
         return sections;
     }
 
+    /**
+     * Copies all sections (includes the global properties) of the specified {@link IniProperties}
+     * into this {@code IniProperties}. Missing sections are created, and entries of the specified
+     * {@code IniProperties} replace the entries with the same keys in this {@code IniProperties}.
+     * @param ini the {@code IniProperties} to merge
+     * @throws NullPointerException if {@code ini} is {@code null}
+     */
+    public void merge(IniProperties ini) {
+        globalProperties().putAll(ini.globalProperties());
+        for (Map.Entry<String, Properties> entry : ini.sections().entrySet()) {
+            sections.computeIfAbsent(entry.getKey(), sectionName -> newSection()).putAll(entry.getValue());
+        }
+    }
+
     /**
      * Removes all empty sections for this {@link IniProperties}.
      */
@@ -710,4 +1594,10 @@ public class IniProperties extends FilterProperties {
         return result;
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // absent from streams written before dialects were added
+        if (dialect == null) dialect = IniDialect.DEFAULT;
+    }
+
 }
@@ -1,24 +1,19 @@
 package com.tianscar.properties;
 
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
-import org.xml.sax.helpers.DefaultHandler;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.tianscar.properties.Utils.*;
 
-final class IniPropertiesHandler extends DefaultHandler {
+final class IniPropertiesHandler {
 
     private static final String ELEMENT_INI = "ini";
     private static final String ELEMENT_SECTION = "section";
@@ -30,47 +25,126 @@ final class IniPropertiesHandler extends DefaultHandler {
 
     private static final String DTD_URI = "https://dtd.tianscar.com/ini.dtd";
     private static final String DTD_DECL = "<!DOCTYPE ini SYSTEM \"" + DTD_URI + "\">";
-    private static final String DTD = "<!-- DTD for INI -->\n" +
-            "\n" +
-            "<!ELEMENT ini ( comment?, ( section | entry )* ) >\n" +
-            "\n" +
-            "<!ATTLIST ini version CDATA #FIXED \"1.0\">\n" +
-            "\n" +
-            "<!ELEMENT comment (#PCDATA) >\n" +
-            "\n" +
-            "<!ELEMENT section ( section | entry )* >\n" +
-            "\n" +
-            "<!ATTLIST section name CDATA #REQUIRED>\n" +
-            "\n" +
-            "<!ELEMENT entry (#PCDATA) >\n" +
-            "\n" +
-            "<!ATTLIST entry key CDATA #REQUIRED>";
-
-    private IniProperties ini;
-    private StringBuilder stringBuilder;
-
-    private boolean rootElementRead;
-    private boolean commentRead;
-    private boolean readingEntry;
-    private String currentKey;
+    private static final String VERSION = "1.0";
 
-    public void load(IniProperties ini, InputStream inStream) throws IOException {
-        this.ini = Objects.requireNonNull(ini, "properties cannot be null");
-        stringBuilder = new StringBuilder();
+    /**
+     * The factories are not guaranteed to be thread-safe, so one is kept per thread. Documents are checked
+     * against the DTD by the loader itself, the parser neither reads the DTD nor resolves external entities.
+     */
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY = ThreadLocal.withInitial(XMLOutputFactory::newInstance);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setValidating(true);
+    public void load(IniProperties ini, InputStream inStream) throws IOException {
+        Objects.requireNonNull(ini, "properties cannot be null");
+        XMLStreamReader reader = null;
         try {
-            SAXParser parser = factory.newSAXParser();
-            parser.parse(inStream, this);
-        } catch (SAXException | ParserConfigurationException e) {
+            reader = INPUT_FACTORY.get().createXMLStreamReader(inStream);
+            load(ini, reader);
+        }
+        catch (XMLStreamException e) {
             throw new InvalidPropertiesFormatException(e);
         }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                }
+                catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the document, checking its structure against the DTD: the root element is {@code ini},
+     * it starts with an optional {@code comment}, then contains {@code section} and {@code entry} elements,
+     * sections contain sections and entries, entries contain text only. Sections are created by their first entry.
+     */
+    private static void load(IniProperties ini, XMLStreamReader reader) throws XMLStreamException, IOException {
+        IniDialect dialect = ini.dialect();
+        List<String> sectionNames = new ArrayList<>();
+        List<Properties> sections = new ArrayList<>();
+        sectionNames.add(null);
+        sections.add(ini.getSection(null));
+        boolean rootElementRead = false, childRead = false;
+        String name, sectionName, key;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                if (ELEMENT_SECTION.equals(reader.getLocalName())) {
+                    sectionNames.remove(sectionNames.size() - 1);
+                    sections.remove(sections.size() - 1);
+                }
+                continue;
+            }
+            else if (event != XMLStreamConstants.START_ELEMENT) continue;
+            name = reader.getLocalName();
+            if (!rootElementRead) {
+                if (!ELEMENT_INI.equals(name)) throw error(reader, "The root element type must be \"ini\"");
+                String version = reader.getAttributeValue(null, ATTRIBUTE_VERSION);
+                if (version != null && !VERSION.equals(version)) {
+                    throw error(reader, "Attribute \"version\" must have the value \"" + VERSION + "\"");
+                }
+                rootElementRead = true;
+                continue;
+            }
+            switch (name) {
+                case ELEMENT_COMMENT:
+                    if (childRead || sections.size() != 1) {
+                        throw error(reader, "Only one comment element may be allowed. "
+                                + "The content of element type \"ini\" must match \"(comment?,(section|entry)*)\"");
+                    }
+                    reader.getElementText();
+                    break;
+                case ELEMENT_ENTRY:
+                    key = reader.getAttributeValue(null, ATTRIBUTE_KEY);
+                    if (key == null) {
+                        throw error(reader, "Attribute \"key\" is required and must be specified for element type \"entry\"");
+                    }
+                    section(ini, sectionNames, sections).put(key, reader.getElementText());
+                    break;
+                case ELEMENT_SECTION:
+                    sectionName = reader.getAttributeValue(null, ATTRIBUTE_NAME);
+                    if (sectionName == null) {
+                        throw error(reader, "Attribute \"name\" is required and must be specified for element type \"section\"");
+                    }
+                    String parentSectionName = sectionNames.get(sectionNames.size() - 1);
+                    sectionNames.add(dialect.resolve(parentSectionName,
+                            parentSectionName == null ? sectionName : dialect.sectionSeparator() + sectionName));
+                    sections.add(null);
+                    break;
+                default:
+                    throw error(reader, "Invalid element type: " + name);
+            }
+            childRead = true;
+        }
+    }
+
+    private static Properties section(IniProperties ini, List<String> sectionNames, List<Properties> sections) {
+        int last = sections.size() - 1;
+        Properties section = sections.get(last);
+        if (section == null) {
+            String sectionName = sectionNames.get(last);
+            if ((section = ini.getSection(sectionName)) == null) ini.setSection(sectionName, section = ini.newSection());
+            sections.set(last, section);
+        }
+        return section;
+    }
+
+    private static InvalidPropertiesFormatException error(XMLStreamReader reader, String message) {
+        return new InvalidPropertiesFormatException("Line " + reader.getLocation().getLineNumber()
+                + ", column " + reader.getLocation().getColumnNumber() + ": " + message);
     }
 
-    private static void writeEntries(XMLStreamWriter writer, Properties properties) throws XMLStreamException {
-        if (properties.size() > 0) {
-            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+    private static void writeEntries(XMLStreamWriter writer, List<Map.Entry<Object, Object>> entries) throws XMLStreamException {
+        if (entries != null) {
+            for (Map.Entry<Object, Object> entry : entries) {
                 String key = (String) entry.getKey();
                 String value = (String) entry.getValue();
                 writer.writeStartElement(ELEMENT_ENTRY);
@@ -81,84 +155,143 @@ final class IniPropertiesHandler extends DefaultHandler {
         }
     }
 
+    /**
+     * A section of the tree written to XML, the entries are {@code null} for a section that does not exist
+     * but has descendants. Children are kept in insertion order.
+     */
     private static class IniTreeNode {
         public String name;
-        public Properties properties;
-        public final List<IniTreeNode> children;
+        public List<Map.Entry<Object, Object>> entries;
+        public final Map<String, IniTreeNode> children;
         public IniTreeNode() {
             this(null, null);
         }
-        public IniTreeNode(String name, Properties properties) {
+        public IniTreeNode(String name, List<Map.Entry<Object, Object>> entries) {
             this.name = name;
-            this.properties = properties;
-            children = new ArrayList<>();
+            this.entries = entries;
+            children = new LinkedHashMap<>();
         }
-        public boolean hasChild(String name) {
-            for (IniTreeNode child : children) {
-                if (Objects.equals(child.name, name)) return true;
+        public void write(XMLStreamWriter writer) throws XMLStreamException {
+            for (IniTreeNode child : children.values()) {
+                child.writeSection(writer);
             }
-            return false;
         }
-        public IniTreeNode getChild(String name) {
-            for (IniTreeNode child : children) {
-                if (Objects.equals(child.name, name)) return child;
+        public void writeSection(XMLStreamWriter writer) throws XMLStreamException {
+            writer.writeStartElement(ELEMENT_SECTION);
+            writer.writeAttribute(ATTRIBUTE_NAME, name);
+            writeEntries(writer, entries);
+            write(writer);
+            writer.writeEndElement();
+        }
+        public int size() {
+            int size = (entries == null ? 0 : entries.size()) + 1;
+            for (IniTreeNode child : children.values()) {
+                size += child.size();
             }
-            return null;
+            return size;
         }
-        public void write(XMLStreamWriter writer) throws XMLStreamException {
-            for (IniTreeNode child : children) {
-                writer.writeStartElement(ELEMENT_SECTION);
-                writer.writeAttribute(ATTRIBUTE_NAME, child.name);
-                writeEntries(writer, child.properties);
-                child.write(writer);
-                writer.writeEndElement();
+    }
+
+    private static final String INDENT = "    ";
+
+    /**
+     * Creates a writer to the specified stream. Compact writers are the ones of the factory,
+     * writing no whitespace between elements, the others indent the document.
+     */
+    private static XMLStreamWriter newWriter(OutputStream out, Charset charset, boolean compact) throws XMLStreamException {
+        XMLStreamWriter writer = OUTPUT_FACTORY.get().createXMLStreamWriter(out, charset.name());
+        if (compact) return writer;
+        IndentingXMLStreamWriter indenting = new IndentingXMLStreamWriter(writer);
+        indenting.setIndent(INDENT);
+        return indenting;
+    }
+
+    /**
+     * Builds the section tree of a {@linkplain Utils#snapshot(IniProperties) snapshot} in one pass.
+     * The nodes are cached by section name, so only the ancestors without a node yet are looked up
+     * for each section. A section is added with all its ancestors, the ones without entries included,
+     * unless it has no entries itself: then only its ancestors with entries are added, down to the
+     * first one without entries.
+     */
+    private static IniTreeNode buildTree(Map<String, List<Map.Entry<Object, Object>>> sections, char separator) {
+        IniTreeNode tree = new IniTreeNode();
+        Map<String, IniTreeNode> nodes = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, List<Map.Entry<Object, Object>>> entry : sections.entrySet()) {
+            String sectionName = entry.getKey();
+            if (sectionName == null) continue;
+            IniTreeNode parent = null;
+            while (sectionName != null && (parent = nodes.get(sectionName)) == null) {
+                missing.add(sectionName);
+                sectionName = parentSectionName(sectionName, separator);
+            }
+            if (parent == null) parent = tree;
+            boolean empty = entry.getValue().isEmpty();
+            for (int i = missing.size() - 1; i >= 0; i --) {
+                sectionName = missing.get(i);
+                List<Map.Entry<Object, Object>> entries = i == 0 ? entry.getValue() : sections.get(sectionName);
+                if (empty && (entries == null || entries.isEmpty())) break;
+                IniTreeNode node = new IniTreeNode(plainSectionName(sectionName, separator), entries);
+                parent.children.put(node.name, node);
+                nodes.put(sectionName, parent = node);
             }
+            missing.clear();
         }
+        return tree;
+    }
+
+    /**
+     * Writes the top level sections of the tree in chunks encoded on the specified pool,
+     * see {@link ParallelIniStore}.
+     */
+    private static void writeParallel(XMLStreamWriter writer, OutputStream outStream, IniTreeNode tree,
+                                      Charset charset, boolean compact, ForkJoinPool pool) throws IOException, XMLStreamException {
+        if (compact) {
+            // closes the start tag of the root element
+            writer.writeCharacters("");
+            writer.flush();
+        }
+        else ((IndentingXMLStreamWriter) writer).beforeFragment();
+        ParallelIniStore.write(new ArrayList<>(tree.children.values()), IniTreeNode::size, (nodes, out) -> {
+            try {
+                XMLStreamWriter fragment = newWriter(out, charset, compact);
+                if (!compact) ((IndentingXMLStreamWriter) fragment).startFragment(1);
+                for (IniTreeNode node : nodes) {
+                    node.writeSection(fragment);
+                }
+                fragment.flush();
+            }
+            catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }, outStream, pool);
+        if (!compact) ((IndentingXMLStreamWriter) writer).afterFragment();
+    }
+
+    public void store(IniProperties ini, OutputStream outStream, String comment, Charset charset,
+                      boolean compact) throws IOException {
+        store(ini, outStream, comment, charset, compact, null);
     }
 
-    public void store(IniProperties ini, OutputStream outStream, String comment, Charset charset) throws IOException {
+    public void store(IniProperties ini, OutputStream outStream, String comment, Charset charset,
+                      boolean compact, ForkJoinPool pool) throws IOException {
         try {
-            XMLOutputFactory factory = XMLOutputFactory.newInstance();
-            IndentingXMLStreamWriter writer = new IndentingXMLStreamWriter(factory.createXMLStreamWriter(outStream, charset.name()));
-            writer.setIndent("    ");
+            XMLStreamWriter writer = newWriter(outStream, charset, compact);
             writer.writeStartDocument(charset.name(), "1.0");
             writer.writeDTD(DTD_DECL);
             writer.writeStartElement(ELEMENT_INI);
-            writer.writeAttribute(ATTRIBUTE_VERSION, "1.0");
+            writer.writeAttribute(ATTRIBUTE_VERSION, VERSION);
             if (comment != null && comment.length() > 0) {
                 writer.writeStartElement(ELEMENT_COMMENT);
                 writer.writeCharacters(comment);
                 writer.writeEndElement();
             }
-            synchronized(ini) {
-                writeEntries(writer, ini.globalProperties());
-                IniTreeNode tree = new IniTreeNode();
-                IniTreeNode last;
-                List<Map.Entry<String, Properties>> tmp = new LinkedList<>();
-                String sectionName;
-                Properties sectionProperties;
-                for (Map.Entry<String, Properties> sections : ini.sections().entrySet()) {
-                    last = tree;
-                    sectionName = sections.getKey();
-                    do {
-                        tmp.add(new AbstractMap.SimpleEntry<>(plainSectionName(sectionName), ini.getSection(sectionName)));
-                        sectionName = parentSectionName(sectionName);
-                    }
-                    while (sectionName != null);
-                    Collections.reverse(tmp);
-                    for (Map.Entry<String, Properties> tmpEntry : tmp) {
-                        sectionName = tmpEntry.getKey();
-                        sectionProperties = tmpEntry.getValue();
-                        if (!last.hasChild(sectionName)) {
-                            if (sectionProperties.isEmpty()) break;
-                            last.children.add(new IniTreeNode(sectionName, sectionProperties));
-                        }
-                        last = last.getChild(sectionName);
-                    }
-                    tmp.clear();
-                }
-                tree.write(writer);
-            }
+            // the monitor of the properties is only held while they are copied
+            Map<String, List<Map.Entry<Object, Object>>> sections = snapshot(ini);
+            writeEntries(writer, sections.get(null));
+            IniTreeNode tree = buildTree(sections, ini.dialect().sectionSeparator());
+            if (pool == null || tree.children.isEmpty() || !isStateless(charset)) tree.write(writer);
+            else writeParallel(writer, outStream, tree, charset, compact, pool);
             writer.writeEndElement();
             writer.writeEndDocument();
             writer.flush();
@@ -170,85 +303,4 @@ final class IniPropertiesHandler extends DefaultHandler {
         }
     }
 
-    @Override
-    public void characters(char[] ch, int start, int length) throws SAXException {
-        if (readingEntry) stringBuilder.append(ch, start, length);
-    }
-
-    @Override
-    public void startDocument() throws SAXException {
-        rootElementRead = false;
-        commentRead = false;
-        readingEntry = false;
-        currentKey = null;
-    }
-
-    @Override
-    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-        switch (qName) {
-            case ELEMENT_COMMENT:
-                if (commentRead) {
-                    fatalError(new SAXParseException("Only one comment element may be allowed. "
-                            + "The content of element type \"ini\" must match \"(comment?,section*)\"", null));
-                    break;
-                }
-                else commentRead = true;
-                break;
-            case ELEMENT_ENTRY:
-                readingEntry = true;
-                currentKey = attributes.getValue(ATTRIBUTE_KEY);
-                if (currentKey == null) {
-                    fatalError(new SAXParseException("Attribute \"key\" is required and must be specified for element type \"entry\"", null));
-                }
-                break;
-            case ELEMENT_SECTION:
-                String sectionName = attributes.getValue(ATTRIBUTE_NAME);
-                if (sectionName == null) {
-                    fatalError(new SAXParseException("Attribute \"name\" is required and must be specified for element type \"section\"", null));
-                }
-                ini.switchSection((ini.currentSectionName() == null ? "" : ".") + sectionName);
-                break;
-            case ELEMENT_INI:
-                if (!rootElementRead) {
-                    rootElementRead = true;
-                    break;
-                }
-            default:
-                readingEntry = false;
-                fatalError(new SAXParseException("Invalid element type: " + qName, null));
-                break;
-        }
-    }
-
-    @Override
-    public void endElement(String uri, String localName, String qName) throws SAXException {
-        switch (qName) {
-            case ELEMENT_ENTRY:
-                if (readingEntry) {
-                    readingEntry = false;
-                    ini.setProperty(currentKey, stringBuilder.toString());
-                    currentKey = null;
-                    stringBuilder.delete(0, stringBuilder.length());
-                }
-                break;
-            case ELEMENT_SECTION:
-                ini.switchSection(ini.parentSectionName());
-                break;
-            case ELEMENT_COMMENT:
-                if (commentRead) break;
-            case ELEMENT_INI:
-                if (rootElementRead) break;
-            default:
-                readingEntry = false;
-                fatalError(new SAXParseException("Invalid element type: " + qName, null));
-                break;
-        }
-    }
-
-    @Override
-    public InputSource resolveEntity(String publicId, String systemId) throws IOException, SAXException {
-        if (DTD_URI.equals(systemId)) return new InputSource(new ByteArrayInputStream(DTD.getBytes("UTF-8")));
-        else throw new SAXException("Invalid system identifier: " + systemId);
-    }
-
 }
@@ -0,0 +1,241 @@
+package com.tianscar.properties;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * The {@link IniReader} class is a pull parser for the ini format.
+ * Unlike {@link IniProperties#load(Reader)}, it does not build any model:
+ * each call to {@link #next()} reads just enough input to return the next event,
+ * so an ini file of any size can be processed in constant memory.
+ * <p>
+ * The syntax accepted is the same as {@link IniProperties#load(Reader)}, which
+ * is described by the {@link IniDialect} of this reader. Section names are
+ * reported with relative names already resolved.
+ * <p>
+ * A typical loop looks like:
+ * <pre>
+ * try (IniReader reader = new IniReader(in)) {
+ *     int event;
+ *     while ((event = reader.next()) != IniReader.END) {
+ *         if (event == IniReader.ENTRY) process(reader.sectionName(), reader.key(), reader.value());
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author Karstian Lee
+ */
+public class IniReader implements Closeable {
+
+    /**
+     * Indicates the end of the input, further calls to {@link #next()} return this event again.
+     */
+    public static final int END = IniTokenizer.END;
+
+    /**
+     * Indicates a section header, the section name is available from {@link #sectionName()}.
+     */
+    public static final int SECTION_START = IniTokenizer.SECTION;
+
+    /**
+     * Indicates an entry, available from {@link #key()} and {@link #value()}.
+     */
+    public static final int ENTRY = IniTokenizer.ENTRY;
+
+    /**
+     * Indicates a comment line, available from {@link #comment()}.
+     */
+    public static final int COMMENT = IniTokenizer.COMMENT;
+
+    private final Reader reader;
+    private final IniDialect dialect;
+    private final IniTokenizer tokenizer;
+
+    private int event = -1;
+    private String sectionName = null;
+
+    /**
+     * Creates a {@link IniReader} reading from the specified character stream,
+     * using the default dialect.
+     *
+     * @param reader the input character stream
+     * @throws NullPointerException if {@code reader} is {@code null}
+     */
+    public IniReader(Reader reader) {
+        this(reader, IniDialect.DEFAULT);
+    }
+
+    /**
+     * Creates a {@link IniReader} reading from the specified character stream,
+     * using the specified dialect.
+     *
+     * @param reader the input character stream
+     * @param dialect the dialect
+     * @throws NullPointerException if {@code reader} or {@code dialect} is {@code null}
+     */
+    public IniReader(Reader reader, IniDialect dialect) {
+        this.reader = Objects.requireNonNull(reader, "reader cannot be null");
+        this.dialect = Objects.requireNonNull(dialect, "dialect cannot be null");
+        tokenizer = new IniTokenizer(reader, dialect, true);
+    }
+
+    /**
+     * Creates a {@link IniReader} reading from the specified file,
+     * using the specified charset and dialect.
+     * Large files are memory-mapped, see {@link IniProperties#load(Path, Charset)}.
+     *
+     * @param path the path of the file
+     * @param charset the charset of the file
+     * @param dialect the dialect
+     * @throws IOException if an error occurred when opening the file
+     * @throws NullPointerException if {@code path}, {@code charset} or {@code dialect} is {@code null}
+     */
+    public IniReader(Path path, Charset charset, IniDialect dialect) throws IOException {
+        this(open(path, Objects.requireNonNull(charset, "Charset")), dialect);
+    }
+
+    private static Reader open(Path path, Charset charset) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBufferReader.read(channel);
+            if (buffer != null) {
+                channel.close();
+                return ByteBufferReader.open(buffer, charset);
+            }
+            // too large to be held in a single buffer, the channel is closed by close()
+            return Utils.newReader(Channels.newInputStream(channel), charset);
+        }
+        catch (Throwable t) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return the event, one of {@link #SECTION_START}, {@link #ENTRY}, {@link #COMMENT} and {@link #END}
+     * @throws IOException if an error occurred when reading from the input
+     * @throws IllegalArgumentException if the input contains a malformed Unicode escape sequence
+     */
+    public int next() throws IOException {
+        event = tokenizer.next();
+        if (event == SECTION_START) sectionName = tokenizer.sectionName();
+        return event;
+    }
+
+    /**
+     * Reads all remaining events and pushes them to the specified handler.
+     * After this method returns normally, the current event is {@link #END}.
+     *
+     * @param handler the handler
+     * @throws IOException if an error occurred when reading from the input,
+     *         or if the handler throws an {@code IOException}
+     * @throws IllegalArgumentException if the input contains a malformed Unicode escape sequence
+     * @throws NullPointerException if {@code handler} is {@code null}
+     */
+    public void parse(IniContentHandler handler) throws IOException {
+        Objects.requireNonNull(handler, "handler cannot be null");
+        Utils.parseIni(tokenizer, new IniContentHandler() {
+            @Override
+            public void startSection(String sectionName) throws IOException {
+                IniReader.this.sectionName = sectionName;
+                handler.startSection(sectionName);
+            }
+            @Override
+            public void entry(String key, String value) throws IOException {
+                handler.entry(key, value);
+            }
+            @Override
+            public void comment(String comment) throws IOException {
+                handler.comment(comment);
+            }
+        });
+        event = END;
+    }
+
+    /**
+     * Returns the current event.
+     * @return the current event, or {@code -1} if {@link #next()} has not been called yet
+     */
+    public int event() {
+        return event;
+    }
+
+    /**
+     * Returns the name of the current section, that is, the section started by the last
+     * {@link #SECTION_START} event.
+     * @return the current section name, or {@code null} before the first section header
+     */
+    public String sectionName() {
+        return sectionName;
+    }
+
+    /**
+     * Returns the key of the current entry.
+     * @return the key
+     * @throws IllegalStateException if the current event is not {@link #ENTRY}
+     */
+    public String key() {
+        checkEvent(ENTRY);
+        return tokenizer.key();
+    }
+
+    /**
+     * Returns the value of the current entry.
+     * @return the value
+     * @throws IllegalStateException if the current event is not {@link #ENTRY}
+     */
+    public String value() {
+        checkEvent(ENTRY);
+        return tokenizer.value();
+    }
+
+    /**
+     * Returns the text of the current comment line,
+     * without the comment sign and the line terminator.
+     * @return the comment text
+     * @throws IllegalStateException if the current event is not {@link #COMMENT}
+     */
+    public String comment() {
+        checkEvent(COMMENT);
+        return tokenizer.comment();
+    }
+
+    private void checkEvent(int expected) {
+        if (event != expected) throw new IllegalStateException("current event is " + event + ", expected " + expected);
+    }
+
+    /**
+     * Returns the dialect of this {@link IniReader}.
+     * @return the dialect
+     */
+    public IniDialect dialect() {
+        return dialect;
+    }
+
+    /**
+     * Closes the underlying character stream.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
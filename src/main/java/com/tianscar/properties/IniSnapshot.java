@@ -0,0 +1,380 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.InvalidPropertiesFormatException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the binary snapshot format of {@link IniProperties}.
+ * <p>
+ * A snapshot starts with the magic {@code INIS} and a version byte, followed by a flags byte and,
+ * if the snapshot caches a source file, the key of that file: its size, last modified time,
+ * CRC-32 of its content, charset and dialect. Then comes the string table, holding every distinct
+ * section name, key and value once, and the section table, the global properties first, where names,
+ * keys and values are indices into the string table. The snapshot ends with the CRC-32 of all
+ * the preceding bytes. Integers are big-endian, counts and indices are unsigned LEB128 varints,
+ * and strings are length-prefixed UTF-8, with supplementary characters and unpaired surrogates
+ * encoded as three bytes per {@code char}, so that any string is written losslessly.
+ *
+ * @author Karstian Lee
+ */
+final class IniSnapshot {
+
+    private static final byte[] MAGIC = { 'I', 'N', 'I', 'S' };
+    private static final byte VERSION = 1;
+    private static final byte FLAG_SOURCE = 1;
+
+    /**
+     * The suffix of a cached snapshot, appended to the name of its source file.
+     */
+    static final String SUFFIX = ".snapshot";
+
+    private IniSnapshot() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Identifies the content of a source file and how it was parsed.
+     */
+    private static final class Source {
+        final long size, lastModified;
+        final int crc;
+        final String charset, commentSigns, delimiters;
+        final byte options;
+        final char sectionSeparator;
+        Source(long size, long lastModified, int crc, String charset, String commentSigns, String delimiters,
+               byte options, char sectionSeparator) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+            this.charset = charset;
+            this.commentSigns = commentSigns;
+            this.delimiters = delimiters;
+            this.options = options;
+            this.sectionSeparator = sectionSeparator;
+        }
+        Source(long size, long lastModified, int crc, Charset charset, IniDialect dialect) {
+            this(size, lastModified, crc, charset.name(), dialect.commentSigns(), dialect.delimiters(),
+                    (byte) ((dialect.removeQuotes() ? 1 : 0) | (dialect.escapes() ? 2 : 0)), dialect.sectionSeparator());
+        }
+        boolean matches(Source that) {
+            return size == that.size && lastModified == that.lastModified && crc == that.crc
+                    && charset.equals(that.charset) && commentSigns.equals(that.commentSigns)
+                    && delimiters.equals(that.delimiters) && options == that.options
+                    && sectionSeparator == that.sectionSeparator;
+        }
+    }
+
+    /**
+     * A growable byte array with direct access, the snapshot is built in memory to compute its checksum.
+     */
+    private static final class Output {
+        byte[] bytes = new byte[8192];
+        int count = 0;
+        void ensure(int length) {
+            if (bytes.length - count < length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + length));
+        }
+        void writeByte(int b) {
+            ensure(1);
+            bytes[count ++] = (byte) b;
+        }
+        void writeInt(int i) {
+            ensure(4);
+            bytes[count ++] = (byte) (i >>> 24);
+            bytes[count ++] = (byte) (i >>> 16);
+            bytes[count ++] = (byte) (i >>> 8);
+            bytes[count ++] = (byte) i;
+        }
+        void writeLong(long l) {
+            writeInt((int) (l >>> 32));
+            writeInt((int) l);
+        }
+        void writeVarint(int i) {
+            ensure(5);
+            while ((i & ~0x7F) != 0) {
+                bytes[count ++] = (byte) ((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            bytes[count ++] = (byte) i;
+        }
+        void writeString(String string) {
+            int length = string.length(), encoded = 0;
+            char ch;
+            for (int i = 0; i < length; i ++) {
+                ch = string.charAt(i);
+                encoded += ch < 0x80 ? 1 : ch < 0x800 ? 2 : 3;
+            }
+            writeVarint(encoded);
+            ensure(encoded);
+            for (int i = 0; i < length; i ++) {
+                ch = string.charAt(i);
+                if (ch < 0x80) bytes[count ++] = (byte) ch;
+                else if (ch < 0x800) {
+                    bytes[count ++] = (byte) (0xC0 | (ch >> 6));
+                    bytes[count ++] = (byte) (0x80 | (ch & 0x3F));
+                }
+                else {
+                    bytes[count ++] = (byte) (0xE0 | (ch >> 12));
+                    bytes[count ++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                    bytes[count ++] = (byte) (0x80 | (ch & 0x3F));
+                }
+            }
+        }
+    }
+
+    static void write(IniProperties ini, OutputStream out) throws IOException {
+        write(ini, out, null);
+    }
+
+    private static void write(IniProperties ini, OutputStream out, Source source) throws IOException {
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        List<int[]> tables = new ArrayList<>();
+        for (Map.Entry<String, List<Map.Entry<Object, Object>>> section : Utils.snapshot(ini).entrySet()) {
+            int[] table = new int[1 + section.getValue().size() * 2];
+            int position = 0;
+            table[position ++] = section.getKey() == null ? 0 : index(indices, strings, section.getKey()) + 1;
+            for (Map.Entry<Object, Object> entry : section.getValue()) {
+                table[position ++] = index(indices, strings, (String) entry.getKey());
+                table[position ++] = index(indices, strings, (String) entry.getValue());
+            }
+            tables.add(table);
+        }
+        Output output = new Output();
+        for (byte b : MAGIC) {
+            output.writeByte(b);
+        }
+        output.writeByte(VERSION);
+        output.writeByte(source == null ? 0 : FLAG_SOURCE);
+        if (source != null) {
+            output.writeLong(source.size);
+            output.writeLong(source.lastModified);
+            output.writeInt(source.crc);
+            output.writeString(source.charset);
+            output.writeString(source.commentSigns);
+            output.writeString(source.delimiters);
+            output.writeByte(source.options);
+            output.writeString(String.valueOf(source.sectionSeparator));
+        }
+        output.writeVarint(strings.size());
+        for (String string : strings) {
+            output.writeString(string);
+        }
+        output.writeVarint(tables.size());
+        for (int[] table : tables) {
+            output.writeVarint(table[0]);
+            output.writeVarint((table.length - 1) / 2);
+            for (int i = 1; i < table.length; i ++) {
+                output.writeVarint(table[i]);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(output.bytes, 0, output.count);
+        output.writeInt((int) crc.getValue());
+        out.write(output.bytes, 0, output.count);
+        out.flush();
+    }
+
+    private static int index(Map<String, Integer> indices, List<String> strings, String string) {
+        Integer index = indices.get(string);
+        if (index == null) {
+            indices.put(string, index = strings.size());
+            strings.add(string);
+        }
+        return index;
+    }
+
+    static void read(IniProperties ini, InputStream in) throws IOException {
+        byte[] bytes = new byte[8192];
+        int length = 0, read;
+        while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+            if ((length += read) == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        read(ini, ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    static void read(IniProperties ini, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBufferReader.read(channel);
+        if (buffer == null) throw new InvalidPropertiesFormatException("Snapshot too large");
+        read(ini, buffer);
+    }
+
+    /**
+     * Reads a snapshot into the specified {@link IniProperties}, which is left unchanged if the snapshot is invalid.
+     */
+    private static void read(IniProperties ini, ByteBuffer buffer) throws IOException {
+        List<String> sectionNames = new ArrayList<>();
+        List<Properties> sections = new ArrayList<>();
+        try {
+            readHeader(buffer);
+            int count = readVarint(buffer);
+            String[] strings = new String[count];
+            byte[] scratch = new byte[0];
+            for (int i = 0; i < count; i ++) {
+                int length = readVarint(buffer);
+                if (buffer.hasArray()) {
+                    strings[i] = decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                }
+                else {
+                    if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+                    buffer.get(scratch, 0, length);
+                    strings[i] = decode(scratch, 0, length);
+                }
+            }
+            count = readVarint(buffer);
+            for (int i = 0; i < count; i ++) {
+                int name = readVarint(buffer);
+                if (name == 0 && i != 0 || name != 0 && i == 0) throw new InvalidPropertiesFormatException("Invalid snapshot");
+                sectionNames.add(name == 0 ? null : strings[name - 1]);
+                Properties section = ini.newSection();
+                for (int entries = readVarint(buffer); entries > 0; entries --) {
+                    String key = strings[readVarint(buffer)];
+                    section.put(key, strings[readVarint(buffer)]);
+                }
+                sections.add(section);
+            }
+            if (count == 0 || buffer.remaining() != 4) throw new InvalidPropertiesFormatException("Invalid snapshot");
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new InvalidPropertiesFormatException("Truncated snapshot");
+        }
+        for (int i = 0; i < sections.size(); i ++) {
+            ini.setSection(sectionNames.get(i), sections.get(i));
+        }
+    }
+
+    /**
+     * Checks the magic, version and checksum of a snapshot, and reads its source key.
+     *
+     * @return the source key, or {@code null} if the snapshot does not cache a source file
+     */
+    private static Source readHeader(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        if (buffer.remaining() < MAGIC.length + 2 + 4) throw new InvalidPropertiesFormatException("Truncated snapshot");
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) throw new InvalidPropertiesFormatException("Not a snapshot");
+        }
+        if (buffer.get() != VERSION) throw new InvalidPropertiesFormatException("Unsupported snapshot version");
+        ByteBuffer content = buffer.duplicate();
+        content.position(start).limit(buffer.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new InvalidPropertiesFormatException("Corrupted snapshot");
+        }
+        try {
+            if ((buffer.get() & FLAG_SOURCE) == 0) return null;
+            return new Source(buffer.getLong(), buffer.getLong(), buffer.getInt(), readString(buffer),
+                    readString(buffer), readString(buffer), buffer.get(), readString(buffer).charAt(0));
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new InvalidPropertiesFormatException("Truncated snapshot");
+        }
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int result = 0, b;
+        for (int shift = 0; shift < 35; shift += 7) {
+            result |= ((b = buffer.get()) & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (result < 0) break;
+                return result;
+            }
+        }
+        throw new InvalidPropertiesFormatException("Invalid snapshot");
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readVarint(buffer)];
+        buffer.get(bytes);
+        return decode(bytes, 0, bytes.length);
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length, i = offset;
+        while (i < end && bytes[i] >= 0) i ++;
+        if (i == end) return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        char[] chars = new char[length];
+        int count = i - offset;
+        for (int j = offset; j < i; j ++) {
+            chars[j - offset] = (char) bytes[j];
+        }
+        int b;
+        while (i < end) {
+            b = bytes[i ++];
+            if (b >= 0) chars[count ++] = (char) b;
+            else if ((b & 0xE0) == 0xC0 && i < end) {
+                chars[count ++] = (char) (((b & 0x1F) << 6) | (bytes[i ++] & 0x3F));
+            }
+            else if ((b & 0xF0) == 0xE0 && i + 1 < end) {
+                chars[count ++] = (char) (((b & 0x0F) << 12) | ((bytes[i ++] & 0x3F) << 6) | (bytes[i ++] & 0x3F));
+            }
+            else throw new InvalidPropertiesFormatException("Invalid snapshot string");
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Loads the specified ini file, reusing the snapshot cached next to it if the file did not change
+     * since, or caching a new snapshot otherwise. The cache is best effort: an unreadable or invalid
+     * snapshot is ignored, and so is a failure to write one.
+     */
+    static void loadCached(IniProperties ini, IniDialect dialect, Path path, Charset charset) throws IOException {
+        Path snapshotPath = path.resolveSibling(path.getFileName() + SUFFIX);
+        long lastModified = Files.readAttributes(path, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            content = ByteBufferReader.read(channel);
+        }
+        if (content == null) {
+            // too large to be cached
+            ini.load(path, charset);
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        Source source = new Source(content.remaining(), lastModified, (int) crc.getValue(), charset, dialect);
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer snapshot = ByteBufferReader.read(channel);
+            if (snapshot != null) {
+                Source cached = readHeader(snapshot.duplicate());
+                if (cached != null && cached.matches(source)) {
+                    read(ini, snapshot);
+                    return;
+                }
+            }
+        }
+        catch (IOException ignored) {
+        }
+        IniProperties loaded = new IniProperties(dialect);
+        Utils.loadIni(loaded, dialect, ByteBufferReader.open(content, charset));
+        try {
+            AtomicFile.write(snapshotPath, out -> write(loaded, out, source), false);
+        }
+        catch (IOException ignored) {
+        }
+        ini.setSection(null, loaded.getSection(null));
+        for (Map.Entry<String, Properties> entry : loaded.sections().entrySet()) {
+            ini.setSection(entry.getKey(), entry.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,498 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static com.tianscar.properties.IniDialect.*;
+
+/**
+ * A pull tokenizer for the ini format, reading the input in blocks
+ * and classifying characters through a precomputed lookup table.
+ * Each call to {@link #next()} scans until a section header or an entry
+ * has been completed, or a comment line has been read if comments are reported.
+ */
+final class IniTokenizer {
+
+    static final int END = 0, SECTION = 1, ENTRY = 2, COMMENT = 3;
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private static final int NONE = 0, SLASH = 1, UNICODE = 2, CONTINUE = 3, KEY_DONE = 4, IGNORE = 5;
+
+    private static final int SKIPPED = -1;
+
+    private final Reader reader;
+    private final IniDialect dialect;
+    private byte[] classes;
+    private boolean removeQuotes;
+    private final boolean comments;
+
+    private char[] block;
+    private int position = 0, limit = 0;
+    private boolean eof = false;
+    private int lineStart = 0, tokenStart = 0;
+    private boolean skipEntries = false, resolveSectionNames = true, partial = false;
+
+    private char[] buf = new char[40];
+    private int offset = 0, keyLength = -1;
+    private int mode = NONE, unicode = 0, count = 0;
+    private boolean firstChar = true, inComment = false, lineComment = false;
+
+    private boolean readingSectionName = false;
+    private int sectionNameBegin = -1, sectionNameEnd = -1;
+    private String lastSectionName = null;
+
+    private final StringBuilder commentBuilder = new StringBuilder();
+    private String sectionName, key, value, comment;
+
+    IniTokenizer(Reader reader, IniDialect dialect) {
+        this(reader, dialect, false);
+    }
+
+    /**
+     * @param comments whether comment lines are reported as {@link #COMMENT} tokens instead of skipped
+     */
+    IniTokenizer(Reader reader, IniDialect dialect, boolean comments) {
+        this.reader = reader;
+        this.dialect = dialect;
+        this.classes = dialect.classes;
+        this.removeQuotes = dialect.removeQuotes();
+        this.comments = comments;
+        this.block = new char[BLOCK_SIZE];
+    }
+
+    /**
+     * Creates a tokenizer reading the specified range of an array in place.
+     * Positions reported by {@link #position()} and {@link #tokenStart()} are indexes into the array.
+     */
+    IniTokenizer(char[] chars, int begin, int end, IniDialect dialect) {
+        this.reader = null;
+        this.dialect = dialect;
+        this.classes = dialect.classes;
+        this.removeQuotes = dialect.removeQuotes();
+        this.comments = false;
+        this.block = chars;
+        this.position = this.lineStart = this.tokenStart = begin;
+        this.limit = end;
+        this.eof = true;
+    }
+
+    /**
+     * Creates a tokenizer without input, blocks are passed to {@link #feed(char[], int, int)} as they arrive.
+     * The tokenizer is partial until {@link #setPartial(boolean)} is called after the last block.
+     */
+    IniTokenizer(IniDialect dialect) {
+        this(new char[0], 0, 0, dialect);
+        this.partial = true;
+    }
+
+    /**
+     * Sets the block to read next, the previous block must have been read to its end.
+     */
+    void feed(char[] chars, int begin, int end) {
+        block = chars;
+        position = begin;
+        limit = end;
+    }
+
+    /**
+     * Reports entries as {@link #ENTRY} tokens without creating their keys and values.
+     */
+    void skipEntries() {
+        skipEntries = true;
+    }
+
+    /**
+     * Reads the input as a properties file: brackets are plain characters,
+     * so no {@link #SECTION} token is returned, and quotes are kept.
+     */
+    void propertiesSyntax() {
+        classes = dialect.propertiesClasses;
+        removeQuotes = false;
+    }
+
+    /**
+     * Reports section names as written, without resolving relative names.
+     */
+    void keepRelativeSectionNames() {
+        resolveSectionNames = false;
+    }
+
+    /**
+     * Sets whether the input ends in the middle of the text.
+     * If so, reaching the end returns {@link #END} without completing the pending line,
+     * and the range can be extended with {@link #extend(int)}.
+     */
+    void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * Extends the range of an array tokenizer, the new range must continue the old one.
+     */
+    void extend(int end) {
+        limit = end;
+    }
+
+    /**
+     * Returns whether the tokenizer is in the same state as a new one,
+     * that is, at the start of a line with nothing pending.
+     */
+    boolean atLineStart() {
+        return mode == NONE && offset == 0 && keyLength == -1 && firstChar && !inComment
+                && !readingSectionName && sectionNameBegin == -1 && sectionNameEnd == -1;
+    }
+
+    /**
+     * Returns the current position in the block.
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * Returns the position in the block where the logical line of the last token began,
+     * after any comment lines before it.
+     */
+    int tokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * Returns the name of the last section header, with relative names already resolved.
+     */
+    String sectionName() {
+        return sectionName;
+    }
+
+    String key() {
+        return key;
+    }
+
+    String value() {
+        return value;
+    }
+
+    /**
+     * Returns the text of the last comment line, without the comment sign and the line terminator.
+     */
+    String comment() {
+        return comment;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        int read;
+        do {
+            read = reader.read(block, 0, block.length);
+        }
+        while (read == 0);
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void ensureCapacity() {
+        if (offset == buf.length) {
+            char[] newBuf = new char[buf.length * 2];
+            System.arraycopy(buf, 0, newBuf, 0, offset);
+            buf = newBuf;
+        }
+    }
+
+    /**
+     * Scans to the next section header or entry.
+     * @return {@link #SECTION}, {@link #ENTRY}, or {@link #END} if the input is exhausted
+     */
+    int next() throws IOException {
+        final byte[] classes = this.classes;
+        final char[] block = this.block;
+        char nextChar;
+        byte cls;
+        int token;
+        if (inComment && (token = commentLine()) != SKIPPED) return token;
+        while (true) {
+            if (position == limit && !fill()) return partial ? END : finish();
+            nextChar = block[position ++];
+
+            ensureCapacity();
+            if (mode == UNICODE) {
+                unicodeDigit(nextChar);
+                continue;
+            }
+            if (mode == SLASH) {
+                escape(nextChar);
+                continue;
+            }
+            cls = nextChar < 256 ? classes[nextChar] : classOf(nextChar);
+            if (cls == PLAIN) {
+                append(nextChar);
+                // copy the rest of the plain run straight out of the block
+                while (position < limit && ((nextChar = block[position]) < 256 ?
+                        classes[nextChar] == PLAIN : classOf(nextChar) == PLAIN)) {
+                    ensureCapacity();
+                    buf[offset++] = nextChar;
+                    position ++;
+                }
+                continue;
+            }
+            switch (nextChar) {
+                case '[':
+                    if (!readingSectionName) {
+                        readingSectionName = true;
+                        sectionNameBegin = offset;
+                        continue;
+                    }
+                    break;
+                case ']':
+                    sectionNameEnd = offset;
+                    continue;
+                case '\n':
+                    if (mode == CONTINUE) { // Part of a \r\n sequence
+                        mode = IGNORE; // Ignore whitespace on the next line
+                        continue;
+                    }
+                    // fall into the next case
+                case '\r':
+                    if ((token = endLine()) != END) return token;
+                    continue;
+                case '\\':
+                    if (mode == KEY_DONE) {
+                        keyLength = offset;
+                    }
+                    mode = SLASH;
+                    continue;
+                default:
+                    if ((cls & COMMENT_SIGN) != 0 && firstChar) {
+                        commentBuilder.setLength(0);
+                        lineComment = atLineStart();
+                        if ((token = commentLine()) != SKIPPED) return token;
+                        continue;
+                    }
+                    if ((cls & DELIMITER) != 0 && !readingSectionName && keyLength == -1) { // if parsing the key
+                        mode = NONE;
+                        keyLength = offset;
+                        continue;
+                    }
+                    if ((cls & WHITESPACE) != 0 && skipWhitespace()) continue;
+            }
+            append(nextChar);
+        }
+    }
+
+    /**
+     * Appends a character of a key, value or section header.
+     */
+    private void append(char ch) {
+        if (mode == IGNORE || mode == CONTINUE) {
+            mode = NONE;
+        }
+        else if (mode == KEY_DONE) {
+            keyLength = offset;
+            mode = NONE;
+        }
+        firstChar = false;
+        buf[offset++] = ch;
+    }
+
+    /**
+     * Handles the character following a backslash.
+     */
+    private void escape(char ch) {
+        mode = NONE;
+        switch (ch) {
+            case '\r':
+                mode = CONTINUE; // Look for a following \n
+                return;
+            case '\n':
+                mode = IGNORE; // Ignore whitespace on the next line
+                return;
+            case 'b':
+                ch = '\b';
+                break;
+            case 'f':
+                ch = '\f';
+                break;
+            case 'n':
+                ch = '\n';
+                break;
+            case 'r':
+                ch = '\r';
+                break;
+            case 't':
+                ch = '\t';
+                break;
+            case 'u':
+                mode = UNICODE;
+                unicode = count = 0;
+                return;
+        }
+        append(ch);
+    }
+
+    private void unicodeDigit(char ch) {
+        int digit = Character.digit(ch, 16);
+        if (digit < 0) throw new IllegalArgumentException("Invalid Unicode sequence: illegal character");
+        unicode = (unicode << 4) + digit;
+        if (++count == 4) {
+            mode = NONE;
+            buf[offset++] = (char) unicode;
+        }
+    }
+
+    /**
+     * Returns whether a whitespace character is skipped rather than appended.
+     */
+    private boolean skipWhitespace() {
+        if (mode == CONTINUE) {
+            mode = IGNORE;
+        }
+        // if key length == 0 or value length == 0
+        if (offset == 0 || offset == keyLength || mode == IGNORE) {
+            return true;
+        }
+        if (keyLength == -1) { // if parsing the key
+            mode = KEY_DONE;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Completes the current line.
+     * @return the token completed by the line, or {@link #END} if the line is blank
+     */
+    private int endLine() {
+        mode = NONE;
+        firstChar = true;
+        int token = END;
+        if (offset > 0 || keyLength == 0) {
+            token = token();
+        }
+        keyLength = -1;
+        offset = 0;
+        tokenStart = lineStart;
+        lineStart = position;
+        return token;
+    }
+
+    /**
+     * Classifies a character outside the table, only whitespace is special there.
+     */
+    private static byte classOf(char ch) {
+        return Character.isWhitespace(ch) ? WHITESPACE : PLAIN;
+    }
+
+    /**
+     * Reads or skips the rest of a comment line.
+     * @return {@link #COMMENT} if a comment has been read, {@link #END} if a partial input ends
+     *         in the middle of the line, or {@link #SKIPPED} if the line has been skipped
+     */
+    private int commentLine() throws IOException {
+        boolean complete = comments ? readComment() : skipLine();
+        if (!complete && partial) {
+            inComment = true;
+            return END;
+        }
+        inComment = false;
+        if (lineComment) lineStart = position;
+        if (comments) {
+            comment = commentBuilder.toString();
+            return COMMENT;
+        }
+        return SKIPPED;
+    }
+
+    private boolean skipLine() throws IOException {
+        char ch;
+        while (position < limit || fill()) {
+            ch = block[position ++];
+            if (ch == '\r' || ch == '\n') return true;
+        }
+        return false;
+    }
+
+    private boolean readComment() throws IOException {
+        char ch;
+        int start;
+        while (position < limit || fill()) {
+            start = position;
+            while (position < limit && (ch = block[position]) != '\r' && ch != '\n') position ++;
+            commentBuilder.append(block, start, position - start);
+            if (position < limit) {
+                position ++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int finish() {
+        int token = END;
+        // if mode is UNICODE but has less than 4 hex digits, should
+        // throw an IllegalArgumentException
+        if (mode == UNICODE && count < 4) {
+            throw new IllegalArgumentException("Invalid Unicode sequence: expected format \\uxxxx");
+        }
+        // if mode is SLASH and no data is read, should append '\u0000'
+        // to buf
+        if (mode == SLASH) {
+            ensureCapacity();
+            buf[offset++] = '\u0000';
+        }
+        if (keyLength == -1 && offset > 0) {
+            keyLength = offset;
+        }
+        if (keyLength >= 0) {
+            token = token();
+        }
+        tokenStart = lineStart;
+        lineStart = position;
+        mode = NONE;
+        keyLength = -1;
+        offset = 0;
+        return token;
+    }
+
+    private int token() {
+        if (keyLength == -1) {
+            keyLength = offset;
+        }
+        if (readingSectionName && sectionNameBegin != -1 && sectionNameEnd != -1) {
+            String sectionName = new String(buf, 0, offset).substring(sectionNameBegin, sectionNameEnd);
+            if (resolveSectionNames) sectionName = dialect.resolve(lastSectionName, sectionName);
+            this.sectionName = lastSectionName = sectionName;
+            readingSectionName = false;
+            sectionNameBegin = sectionNameEnd = -1;
+            return SECTION;
+        }
+        else if (!readingSectionName) {
+            if (skipEntries) {
+                key = value = null;
+            }
+            else if (removeQuotes) {
+                key = unquote(buf, 0, keyLength);
+                value = unquote(buf, keyLength, offset);
+            }
+            else {
+                key = new String(buf, 0, keyLength);
+                value = new String(buf, keyLength, offset - keyLength);
+            }
+            return ENTRY;
+        }
+        else return END;
+    }
+
+    private static String unquote(char[] buf, int begin, int end) {
+        if (end - begin >= 2) {
+            char first = buf[begin];
+            if ((first == '"' || first == '\'') && buf[end - 1] == first) return new String(buf, begin + 1, end - begin - 2);
+        }
+        return new String(buf, begin, end - begin);
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.tianscar.properties;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+/**
+ * The {@link IniWriter} class writes the ini format as a stream of sections, entries and comments.
+ * Unlike {@link IniProperties#store(Writer, String)}, it does not need any model:
+ * each call writes straight to the output, so an ini file of any size can be produced
+ * in constant memory.
+ * <p>
+ * Keys, values and section names are escaped with the same rules as
+ * {@link IniProperties#store(Writer, String)}, which are described by the {@link IniDialect}
+ * of this writer, so the output can be loaded back by {@link IniProperties#load(Reader)}
+ * or {@link IniReader}. Entries written before the first section header belong to the
+ * global properties, and section names are written as they are given, that is, as absolute names.
+ * <p>
+ * As an {@link IniContentHandler}, an {@code IniWriter} can also receive the events of an
+ * {@link IniReader}, for example to rewrite an ini file in another dialect:
+ * <pre>
+ * try (IniReader reader = new IniReader(in); IniWriter writer = new IniWriter(out, dialect)) {
+ *     reader.parse(writer);
+ * }
+ * </pre>
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author Karstian Lee
+ */
+public class IniWriter implements IniContentHandler, Closeable, Flushable {
+
+    private final Writer writer;
+    private final IniDialect dialect;
+    private final boolean escUnicode;
+    private final char[] scratch = new char[Utils.SCRATCH_SIZE];
+
+    /**
+     * Creates a {@link IniWriter} writing to the specified character stream,
+     * using the default dialect.
+     *
+     * @param writer the output character stream
+     * @throws NullPointerException if {@code writer} is {@code null}
+     */
+    public IniWriter(Writer writer) {
+        this(writer, IniDialect.DEFAULT);
+    }
+
+    /**
+     * Creates a {@link IniWriter} writing to the specified character stream,
+     * using the specified dialect.
+     *
+     * @param writer the output character stream
+     * @param dialect the dialect
+     * @throws NullPointerException if {@code writer} or {@code dialect} is {@code null}
+     */
+    public IniWriter(Writer writer, IniDialect dialect) {
+        this(writer instanceof BufferedWriter ? writer :
+                new BufferedWriter(Objects.requireNonNull(writer, "writer cannot be null")), dialect, false);
+    }
+
+    /**
+     * Creates a {@link IniWriter} writing to the specified output stream,
+     * using the specified charset and dialect.
+     * <p>
+     * Like {@link IniProperties#store(OutputStream, String)}, characters less than {@code \u005Cu0020}
+     * and characters greater than {@code \u005Cu007E} in keys, values and section names are written
+     * as {@code \u005Cu}<i>xxxx</i> unless the charset is a Unicode encoding.
+     *
+     * @param out the output stream
+     * @param charset the charset
+     * @param dialect the dialect
+     * @throws NullPointerException if {@code out}, {@code charset} or {@code dialect} is {@code null}
+     */
+    public IniWriter(OutputStream out, Charset charset, IniDialect dialect) {
+        this(Utils.newWriter(Objects.requireNonNull(out, "out cannot be null"),
+                Objects.requireNonNull(charset, "Charset")), dialect, Utils.isEscUnicode(charset));
+    }
+
+    /**
+     * Creates a {@link IniWriter} writing to the specified file channel at its current position,
+     * using the specified charset and dialect. Characters are escaped as described in
+     * {@link #IniWriter(OutputStream, Charset, IniDialect)}.
+     *
+     * @param channel the file channel
+     * @param charset the charset
+     * @param dialect the dialect
+     * @throws NullPointerException if {@code channel}, {@code charset} or {@code dialect} is {@code null}
+     */
+    public IniWriter(FileChannel channel, Charset charset, IniDialect dialect) {
+        this(Channels.newOutputStream(Objects.requireNonNull(channel, "channel cannot be null")),
+                charset, dialect);
+    }
+
+    private IniWriter(Writer writer, IniDialect dialect, boolean escUnicode) {
+        this.writer = writer;
+        this.dialect = Objects.requireNonNull(dialect, "dialect cannot be null");
+        this.escUnicode = escUnicode;
+    }
+
+    /**
+     * Writes a section header. Entries written after it belong to this section
+     * until the next section header.
+     *
+     * @param sectionName the absolute section name
+     * @throws IOException if an error occurred when writing to the output
+     * @throws NullPointerException if {@code sectionName} is {@code null}
+     */
+    @Override
+    public void startSection(String sectionName) throws IOException {
+        Objects.requireNonNull(sectionName, "sectionName cannot be null");
+        writer.write('[');
+        Utils.dumpString(dialect, writer, sectionName, false, escUnicode, scratch);
+        writer.write(']');
+        writer.write('\n');
+    }
+
+    /**
+     * Writes an entry of the current section.
+     *
+     * @param key the key
+     * @param value the value
+     * @throws IOException if an error occurred when writing to the output
+     * @throws NullPointerException if {@code key} or {@code value} is {@code null}
+     */
+    @Override
+    public void entry(String key, String value) throws IOException {
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(value, "value cannot be null");
+        Utils.dumpString(dialect, writer, key, true, escUnicode, scratch);
+        writer.write(dialect.delimiter());
+        Utils.dumpString(dialect, writer, value, false, escUnicode, scratch);
+        writer.write('\n');
+    }
+
+    /**
+     * Writes a comment. Each line of the comment is written with a preceding comment sign,
+     * unless it already begins with one, like the comments of {@link IniProperties#store(Writer, String)}.
+     *
+     * @param comment the comment text
+     * @throws IOException if an error occurred when writing to the output
+     * @throws NullPointerException if {@code comment} is {@code null}
+     */
+    @Override
+    public void comment(String comment) throws IOException {
+        Utils.writeComment(dialect, writer, Objects.requireNonNull(comment, "comment cannot be null"));
+    }
+
+    /**
+     * Returns the dialect of this {@link IniWriter}.
+     * @return the dialect
+     */
+    public IniDialect dialect() {
+        return dialect;
+    }
+
+    /**
+     * Flushes the underlying output.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying output.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link LayeredIniProperties} class is an {@link IniProperties} backed by an ordered
+ * chain of other {@code IniProperties}, its layers, for example host settings over
+ * environment settings over defaults.
+ * <p>
+ * A {@code LayeredIniProperties} is itself the top layer: entries set on it are stored in it
+ * like in any {@code IniProperties}, and take precedence over all layers. The lookup methods
+ * {@link #get(Object)}, {@link #getProperty(String)}, {@link #getProperty(String, String)},
+ * {@link #getOrDefault(Object, Object)} and {@link #containsKey(Object)} resolve a key in the
+ * current section of this {@code LayeredIniProperties} first, then in the section with the same
+ * name of each layer in order, so the first layer has the highest precedence. The lookup methods
+ * of its {@linkplain #section(String) section views} resolve a key the same way in their section.
+ * Nothing is copied from the layers; all other methods, including {@link #sections()},
+ * the {@code store} methods and the collection views, only see the entries of the top layer.
+ * <p>
+ * Keys resolved through the layers are cached per section. Replacing a layer with
+ * {@link #setLayer(int, IniProperties)}, for example after reloading it, only drops the cached
+ * keys whose values differ between the old and new layer, so the rest of the cache survives.
+ * Changes made directly to a layer are not seen until the affected keys are
+ * {@linkplain #invalidate(String, String) invalidated}.
+ *
+ * <p>This class is thread-safe: multiple threads can share a single
+ * {@code LayeredIniProperties} object without the need for external synchronization.
+ *
+ * @author Karstian Lee
+ */
+public class LayeredIniProperties extends IniProperties {
+
+    private static final long serialVersionUID = -3409874524658117361L;
+
+    /**
+     * Cached for keys that none of the layers contains.
+     */
+    private static final Object MISSING = new Object();
+
+    /**
+     * The layers of this {@link LayeredIniProperties}, from the highest precedence to the lowest.
+     */
+    private final CopyOnWriteArrayList<IniProperties> layers;
+
+    private transient ConcurrentHashMap<Object, Object> globalCache;
+    private transient ConcurrentHashMap<String, ConcurrentHashMap<Object, Object>> sectionCaches;
+
+    /**
+     * Incremented after the layers change and before the caches are invalidated, so that values
+     * resolved from the layers as they were before are not left in the caches.
+     */
+    private transient AtomicLong generation;
+
+    /**
+     * Creates an empty {@link LayeredIniProperties} over the specified layers,
+     * using the default dialect.
+     *
+     * @param layers the layers, from the highest precedence to the lowest
+     * @throws NullPointerException if {@code layers} or any of its elements is {@code null}.
+     */
+    public LayeredIniProperties(IniProperties... layers) {
+        this(IniDialect.DEFAULT, layers);
+    }
+
+    /**
+     * Creates an empty {@link LayeredIniProperties} over the specified layers,
+     * using the specified dialect.
+     *
+     * @param dialect the dialect
+     * @param layers the layers, from the highest precedence to the lowest
+     * @throws NullPointerException if {@code dialect}, {@code layers} or any of its elements is {@code null}.
+     */
+    public LayeredIniProperties(IniDialect dialect, IniProperties... layers) {
+        super(dialect);
+        for (IniProperties layer : layers) {
+            Objects.requireNonNull(layer, "layer cannot be null");
+        }
+        this.layers = new CopyOnWriteArrayList<>(Arrays.asList(layers));
+        globalCache = new ConcurrentHashMap<>();
+        sectionCaches = new ConcurrentHashMap<>();
+        generation = new AtomicLong();
+    }
+
+    /**
+     * Returns the layers of this {@link LayeredIniProperties}.
+     * @return an unmodifiable list of the layers, from the highest precedence to the lowest
+     */
+    public List<IniProperties> layers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    /**
+     * Replaces the layer at the specified position, typically with a reloaded copy of it,
+     * and invalidates the cached keys whose values differ between the two layers.
+     *
+     * @param index the position of the layer
+     * @param layer the new layer
+     * @return the previous layer
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws NullPointerException if {@code layer} is {@code null}.
+     */
+    public synchronized IniProperties setLayer(int index, IniProperties layer) {
+        Objects.requireNonNull(layer, "layer cannot be null");
+        IniProperties previous = layers.set(index, layer);
+        generation.incrementAndGet();
+        invalidate(globalCache, previous.globalProperties(), layer.globalProperties());
+        for (Map.Entry<String, ConcurrentHashMap<Object, Object>> entry : sectionCaches.entrySet()) {
+            invalidate(entry.getValue(), previous.getSection(entry.getKey()), layer.getSection(entry.getKey()));
+        }
+        return previous;
+    }
+
+    /**
+     * Invalidates the cached value of the specified key, after the key has been changed
+     * directly in one of the layers.
+     *
+     * @param sectionName the section name, or {@code null} for the global properties
+     * @param key the key
+     * @throws NullPointerException if {@code key} is {@code null}.
+     */
+    public void invalidate(String sectionName, String key) {
+        generation.incrementAndGet();
+        ConcurrentHashMap<Object, Object> cache = sectionName == null ? globalCache : sectionCaches.get(sectionName);
+        if (cache != null) cache.remove(key);
+    }
+
+    /**
+     * Invalidates all cached values, after the layers have been changed directly.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        globalCache.clear();
+        sectionCaches.clear();
+    }
+
+    /**
+     * Drops the cached keys whose values differ between the previous and the new section of a layer,
+     * visiting only the cached keys or only the keys of the two sections, whichever are fewer.
+     */
+    private static void invalidate(ConcurrentHashMap<Object, Object> cache, Properties previous, Properties section) {
+        if (cache.isEmpty() || previous == section) return;
+        int size = (previous == null ? 0 : previous.size()) + (section == null ? 0 : section.size());
+        if (cache.size() <= size) {
+            for (Object key : cache.keySet()) {
+                if (!Objects.equals(get(previous, key), get(section, key))) cache.remove(key);
+            }
+        }
+        else {
+            if (previous != null) {
+                for (Map.Entry<Object, Object> entry : previous.entrySet()) {
+                    if (!entry.getValue().equals(get(section, entry.getKey()))) cache.remove(entry.getKey());
+                }
+            }
+            if (section != null) {
+                for (Object key : section.keySet()) {
+                    if (previous == null || !previous.containsKey(key)) cache.remove(key);
+                }
+            }
+        }
+    }
+
+    private static Object get(Properties section, Object key) {
+        return section == null ? null : section.get(key);
+    }
+
+    /**
+     * Resolves the specified key in the specified section of the layers.
+     */
+    private Object resolve(String sectionName, Object key) {
+        // read before the layers, see below
+        long generation = this.generation.get();
+        ConcurrentHashMap<Object, Object> cache = sectionName == null ? globalCache :
+                sectionCaches.computeIfAbsent(sectionName, name -> new ConcurrentHashMap<>());
+        Object value = cache.computeIfAbsent(key, k -> {
+            Properties section;
+            Object v;
+            for (IniProperties layer : layers) {
+                if ((section = layer.getSection(sectionName)) != null && (v = section.get(k)) != null) return v;
+            }
+            return MISSING;
+        });
+        // the layers changed meanwhile, the value may have been resolved from the previous layers and
+        // cached after the invalidation missed it; otherwise the invalidation comes after and sees it
+        if (this.generation.get() != generation) cache.remove(key, value);
+        return value == MISSING ? null : value;
+    }
+
+    /**
+     * Returns the value of the specified key in the current section,
+     * from this {@link LayeredIniProperties} or else from the first layer containing it.
+     * @param key the key
+     * @return the value, or {@code null} if neither this {@code LayeredIniProperties} nor any layer contains the key
+     */
+    @Override
+    public Object get(Object key) {
+        return lookup(currentSectionName(), key);
+    }
+
+    @Override
+    Object lookup(String sectionName, Object key) {
+        Properties section = getSection(sectionName);
+        Object value = section == null ? null : section.get(key);
+        return value == null ? resolve(sectionName, key) : value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The key is resolved through the layers, see {@link #get(Object)}.
+     */
+    @Override
+    public String getProperty(String key) {
+        Object value = get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The key is resolved through the layers, see {@link #get(Object)}.
+     */
+    @Override
+    public String getProperty(String key, String defaultValue) {
+        String value = getProperty(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The key is resolved through the layers, see {@link #get(Object)}.
+     */
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        Object value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The key is resolved through the layers, see {@link #get(Object)}.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        globalCache = new ConcurrentHashMap<>();
+        sectionCaches = new ConcurrentHashMap<>();
+        generation = new AtomicLong();
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.util.Properties;
+
+/**
+ * A section loaded by {@link IniProperties#loadLazily(java.io.Reader)}.
+ * It only remembers a range of the loaded text, and parses its entries
+ * the first time any of its methods is called.
+ *
+ * @author Karstian Lee
+ */
+final class LazySection extends FilterProperties {
+
+    private static final long serialVersionUID = 2950532542373960227L;
+
+    private final transient IniProperties ini;
+    private transient char[] source;
+    private final int begin, end;
+
+    private volatile Properties properties = null;
+
+    LazySection(IniProperties ini, char[] source, int begin, int end) {
+        super(null);
+        this.ini = ini;
+        this.source = source;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * Returns the entries of this section, parsing them on the first call.
+     * @return the entries of this section
+     */
+    @Override
+    public Properties properties() {
+        Properties properties = this.properties;
+        if (properties == null) {
+            synchronized (this) {
+                if ((properties = this.properties) == null) {
+                    properties = ini.newSection();
+                    IniTokenizer tokenizer = new IniTokenizer(source, begin, end, ini.dialect());
+                    int token;
+                    try {
+                        while ((token = tokenizer.next()) != IniTokenizer.END) {
+                            if (token == IniTokenizer.ENTRY) properties.put(tokenizer.key(), tokenizer.value());
+                        }
+                    }
+                    catch (IOException e) {
+                        // never thrown, the source is already in memory
+                        throw new IllegalStateException(e);
+                    }
+                    this.properties = properties;
+                    source = null;
+                }
+            }
+        }
+        return properties;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        Properties properties = new Properties();
+        properties.putAll(properties());
+        return properties;
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads an ini text held in memory by splitting it at lines starting with {@code [}
+ * and parsing the chunks on a {@link ForkJoinPool}.
+ * <p>
+ * Every chunk is parsed as if it started a new file, with relative section names left unresolved.
+ * The chunks are then merged in order, resolving relative section names against the last section
+ * of the previous chunks. If a chunk does not end at a clean line start (for example its last line
+ * continues with a backslash), the following chunk is parsed again by continuing the previous tokenizer,
+ * so the result is always the same as a sequential load.
+ *
+ * @author Karstian Lee
+ */
+final class ParallelIniLoader {
+
+    /**
+     * Inputs are not split into chunks smaller than this.
+     */
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    private static final class Chunk {
+        final Properties leading;
+        final List<String> sectionNames = new ArrayList<>();
+        final List<Properties> sections = new ArrayList<>();
+        IniTokenizer tokenizer;
+        boolean clean;
+        RuntimeException error;
+        Chunk(Properties leading) {
+            this.leading = leading;
+        }
+    }
+
+    private final IniProperties ini;
+    private final IniDialect dialect;
+    private final char[] chars;
+    private final int length;
+
+    ParallelIniLoader(IniProperties ini, IniDialect dialect, char[] chars, int length) {
+        this.ini = ini;
+        this.dialect = dialect;
+        this.chars = chars;
+        this.length = length;
+    }
+
+    void load(ForkJoinPool pool) {
+        int[] bounds = split(Math.min(length / MIN_CHUNK_SIZE, pool.getParallelism() * 4));
+        int count = bounds.length - 1;
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i ++) {
+            final int begin = bounds[i], end = bounds[i + 1];
+            final boolean last = i == count - 1;
+            if (i == 0) tasks.add(null); // parsed on the caller thread
+            else tasks.add(pool.submit(() -> parseChunk(begin, end, last)));
+        }
+        try {
+            merge(bounds, tasks);
+        }
+        finally {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                if (task != null) task.cancel(false);
+            }
+        }
+    }
+
+    private void merge(int[] bounds, List<ForkJoinTask<Chunk>> tasks) {
+        int count = bounds.length - 1;
+        Properties current = ini.newSection();
+        ini.setSection(null, current);
+        String lastSectionName = null;
+        IniTokenizer carry = null;
+        Chunk chunk;
+        for (int i = 0; i < count; i ++) {
+            boolean last = i == count - 1;
+            if (carry == null) {
+                chunk = i == 0 ? parseChunk(bounds[0], bounds[1], last) : tasks.get(i).join();
+                if (chunk.error != null) throw chunk.error;
+            }
+            else {
+                carry.extend(bounds[i + 1]);
+                carry.setPartial(!last);
+                chunk = new Chunk(ini.newSection());
+                parse(carry, chunk);
+            }
+            current.putAll(chunk.leading);
+            for (int j = 0; j < chunk.sectionNames.size(); j ++) {
+                lastSectionName = dialect.resolve(lastSectionName, chunk.sectionNames.get(j));
+                ini.setSection(lastSectionName, current = chunk.sections.get(j));
+            }
+            carry = chunk.clean ? null : chunk.tokenizer;
+        }
+    }
+
+    /**
+     * Returns the chunk bounds, each chunk but the first starts with a {@code [} at the start of a line.
+     */
+    private int[] split(int count) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int previous = 0;
+        for (int i = 1; i < count; i ++) {
+            int position = Math.max((int) ((long) length * i / count), previous + 1);
+            while (position < length && !(chars[position] == '['
+                    && (chars[position - 1] == '\n' || chars[position - 1] == '\r'))) position ++;
+            if (position >= length) break;
+            bounds.add(previous = position);
+        }
+        bounds.add(length);
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i ++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private Chunk parseChunk(int begin, int end, boolean last) {
+        Chunk chunk = new Chunk(ini.newSection());
+        IniTokenizer tokenizer = new IniTokenizer(chars, begin, end, dialect);
+        tokenizer.keepRelativeSectionNames();
+        tokenizer.setPartial(!last);
+        try {
+            parse(tokenizer, chunk);
+        }
+        catch (RuntimeException e) {
+            chunk.error = e;
+        }
+        return chunk;
+    }
+
+    private void parse(IniTokenizer tokenizer, Chunk chunk) {
+        Properties current = chunk.leading;
+        int token;
+        try {
+            while ((token = tokenizer.next()) != IniTokenizer.END) {
+                if (token == IniTokenizer.SECTION) {
+                    chunk.sectionNames.add(tokenizer.sectionName());
+                    chunk.sections.add(current = ini.newSection());
+                }
+                else current.put(tokenizer.key(), tokenizer.value());
+            }
+        }
+        catch (IOException e) {
+            // never thrown, the text is already in memory
+            throw new IllegalStateException(e);
+        }
+        chunk.tokenizer = tokenizer;
+        chunk.clean = tokenizer.atLineStart();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.tianscar.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ToIntFunction;
+
+/**
+ * Stores an {@link IniProperties} by encoding its sections into separate byte buffers on a
+ * {@link ForkJoinPool}, the counterpart of {@link ParallelIniLoader}.
+ * <p>
+ * The sections are split into chunks of about the same number of entries, each chunk is encoded
+ * into its own buffer, and the buffers are written to the output stream in order as they complete,
+ * so the output is the same as a sequential store. The sections are copied first, see
+ * {@link Utils#snapshot(IniProperties)}, so the encoding does not hold any monitor. Small inputs
+ * are encoded on the calling thread, and charsets that cannot encode parts of a text separately
+ * are always stored sequentially, see {@link Utils#isStateless(Charset)}.
+ *
+ * @author Karstian Lee
+ */
+final class ParallelIniStore {
+
+    /**
+     * Chunks are not made of fewer entries than this.
+     */
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    /**
+     * Encodes a chunk of items to a byte stream.
+     */
+    interface Encoder<T> {
+        void encode(List<T> items, OutputStream out) throws IOException;
+    }
+
+    private static final class Chunk {
+        byte[] bytes;
+        IOException ioError;
+        RuntimeException error;
+    }
+
+    private ParallelIniStore() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void store(IniProperties ini, IniDialect dialect, OutputStream out, String comments,
+                      Charset charset, ForkJoinPool pool) throws IOException {
+        boolean escUnicode = Utils.isEscUnicode(charset);
+        Writer writer = Utils.newWriter(out, charset);
+        if (!Utils.isStateless(charset)) {
+            Utils.storeIni(ini, dialect, writer, comments, escUnicode, true);
+            return;
+        }
+        Map<String, List<Map.Entry<Object, Object>>> sections = Utils.snapshot(ini);
+        Utils.writeHeader(dialect, writer, comments, true);
+        Utils.writeProperties(sections.remove(null), dialect, writer, escUnicode, new char[Utils.SCRATCH_SIZE]);
+        writer.flush();
+        write(new ArrayList<>(sections.entrySet()), entry -> entry.getValue().size() + 1, (entries, chunkOut) -> {
+            Writer chunkWriter = Utils.newWriter(chunkOut, charset);
+            char[] scratch = new char[Utils.SCRATCH_SIZE];
+            List<Map.Entry<Object, Object>> section;
+            for (Map.Entry<String, List<Map.Entry<Object, Object>>> entry : entries) {
+                if ((section = entry.getValue()).isEmpty()) continue;
+                Utils.writeSection(entry.getKey(), section, dialect, chunkWriter, escUnicode, scratch);
+            }
+            chunkWriter.flush();
+        }, out, pool);
+        out.flush();
+    }
+
+    /**
+     * Encodes the items in chunks on the specified pool and writes them in order to the output stream.
+     * The size of an item is the number of entries it is made of.
+     */
+    static <T> void write(List<T> items, ToIntFunction<T> size, Encoder<T> encoder,
+                          OutputStream out, ForkJoinPool pool) throws IOException {
+        long total = 0;
+        for (T item : items) {
+            total += size.applyAsInt(item);
+        }
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, total / (pool.getParallelism() * 4L) + 1);
+        if (total < chunkSize * 2) {
+            encoder.encode(items, out);
+            return;
+        }
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        int from = 0;
+        long entries = 0;
+        for (int i = 0; i < items.size(); i ++) {
+            entries += size.applyAsInt(items.get(i));
+            if (entries >= chunkSize || i == items.size() - 1) {
+                final List<T> chunkItems = items.subList(from, i + 1);
+                tasks.add(pool.submit(() -> encode(chunkItems, encoder)));
+                from = i + 1;
+                entries = 0;
+            }
+        }
+        try {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                Chunk chunk = task.join();
+                if (chunk.ioError != null) throw chunk.ioError;
+                if (chunk.error != null) throw chunk.error;
+                out.write(chunk.bytes);
+            }
+        }
+        finally {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private static <T> Chunk encode(List<T> items, Encoder<T> encoder) {
+        Chunk chunk = new Chunk();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            encoder.encode(items, bytes);
+            chunk.bytes = bytes.toByteArray();
+        }
+        catch (IOException e) {
+            chunk.ioError = e;
+        }
+        catch (RuntimeException e) {
+            chunk.error = e;
+        }
+        return chunk;
+    }
+
+}
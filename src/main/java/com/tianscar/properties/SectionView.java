@@ -0,0 +1,187 @@
+package com.tianscar.properties;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The {@link SectionView} class is a handle on a single section of an {@link IniProperties},
+ * obtained with {@link IniProperties#section(String)}. Unlike the methods of {@code IniProperties}
+ * that work on its current section, a view always reads and writes the section it was created for,
+ * and never reads nor changes the {@linkplain IniProperties#currentSectionName() current section},
+ * so threads sharing an {@code IniProperties} can each use their own views without any
+ * external synchronization.
+ * <p>
+ * A view is immutable and only holds the {@code IniProperties} and the section name. The section
+ * is looked up on every call, so a view sees the section that currently has its name, for example
+ * after the {@code IniProperties} has been loaded again. Reading a section that does not exist
+ * returns nothing, writing to it creates it. The lookup methods of a view resolve keys like the
+ * lookup methods of its {@code IniProperties}, through the layers of a {@link LayeredIniProperties}.
+ * <p>
+ * The {@code null} section name refers to the global properties.
+ *
+ * @author Karstian Lee
+ */
+public final class SectionView {
+
+    private final IniProperties ini;
+    private final String sectionName;
+
+    SectionView(IniProperties ini, String sectionName) {
+        this.ini = Objects.requireNonNull(ini, "ini cannot be null");
+        this.sectionName = sectionName;
+    }
+
+    /**
+     * Returns the {@link IniProperties} of this view.
+     * @return the {@code IniProperties}
+     */
+    public IniProperties ini() {
+        return ini;
+    }
+
+    /**
+     * Returns the name of the section of this view.
+     * @return the section name, or {@code null} for the global properties
+     */
+    public String name() {
+        return sectionName;
+    }
+
+    /**
+     * Returns the plain name of the section of this view, the last part of its name.
+     * @return the plain section name, or {@code null} for the global properties
+     */
+    public String plainName() {
+        return Utils.plainSectionName(sectionName, ini.dialect().sectionSeparator());
+    }
+
+    /**
+     * Returns a view of the parent section of the section of this view.
+     * If the section has no parent section, returns a view of the global properties.
+     * @return the view of the parent section
+     */
+    public SectionView parent() {
+        return new SectionView(ini, Utils.parentSectionName(sectionName, ini.dialect().sectionSeparator()));
+    }
+
+    /**
+     * Returns a view of the specified section. A section name starting with the section separator
+     * is relative to the section of this view, like the ones of {@link IniProperties#switchSection(String)}
+     * are relative to the current section, other section names are absolute.
+     * @param sectionName the section name
+     * @return the view of the section
+     */
+    public SectionView section(String sectionName) {
+        return new SectionView(ini, ini.dialect().resolve(this.sectionName, sectionName));
+    }
+
+    /**
+     * Returns whether the section of this view exists.
+     * @return true if the section exists
+     */
+    public boolean exists() {
+        return ini.getSection(sectionName) != null;
+    }
+
+    /**
+     * Returns the section of this view.
+     * The {@link Properties} is backed by the {@link IniProperties}, like the ones of {@link IniProperties#sections()}.
+     * @return the section, or {@code null} if the section does not exist
+     */
+    public Properties properties() {
+        return ini.getSection(sectionName);
+    }
+
+    /**
+     * Searches for the property with the specified key in the section of this view.
+     * @param key the property key
+     * @return the value in the section with the specified key value,
+     *         or {@code null} if the section does not exist or does not contain the key
+     */
+    public String getProperty(String key) {
+        Object value = ini.lookup(sectionName, key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Searches for the property with the specified key in the section of this view.
+     * @param key the property key
+     * @param defaultValue a default value
+     * @return the value in the section with the specified key value,
+     *         or {@code defaultValue} if the section does not exist or does not contain the key
+     */
+    public String getProperty(String key, String defaultValue) {
+        String value = getProperty(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Returns whether the section of this view contains the specified key.
+     * @param key the property key
+     * @return true if the section exists and contains the key
+     */
+    public boolean containsKey(String key) {
+        return ini.lookup(sectionName, key) != null;
+    }
+
+    /**
+     * Sets the property with the specified key in the section of this view,
+     * creating the section if it does not exist.
+     * @param key the key to be placed into the section
+     * @param value the value corresponding to {@code key}
+     * @return the previous value of the specified key in the section, or {@code null} if it did not have one
+     */
+    public Object setProperty(String key, String value) {
+        return ini.getOrCreateSection(sectionName).setProperty(key, value);
+    }
+
+    /**
+     * Removes the property with the specified key from the section of this view.
+     * @param key the key that needs to be removed
+     * @return the previous value of the specified key in the section, or {@code null} if it did not have one
+     */
+    public Object remove(String key) {
+        Properties section = ini.getSection(sectionName);
+        return section == null ? null : section.remove(key);
+    }
+
+    /**
+     * Returns the keys of the section of this view whose keys and values are strings.
+     * @return an unmodifiable set of the keys, empty if the section does not exist
+     */
+    public Set<String> stringPropertyNames() {
+        Properties section = ini.getSection(sectionName);
+        return section == null ? Collections.emptySet() : section.stringPropertyNames();
+    }
+
+    /**
+     * Compares the specified Object with this {@link SectionView} for equality,
+     * views are equal if they are views of the same section of the same {@link IniProperties}.
+     * @param o object to be compared for equality with this {@code SectionView}
+     * @return true if the specified Object is equal to this {@code SectionView}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SectionView)) return false;
+
+        SectionView that = (SectionView) o;
+
+        if (ini != that.ini) return false;
+        return Objects.equals(sectionName, that.sectionName);
+    }
+
+    /**
+     * Returns the hash code value for this {@link SectionView}.
+     * @return the hash code value for this {@code SectionView}
+     */
+    @Override
+    public int hashCode() {
+        int result = System.identityHashCode(ini);
+        result = 31 * result + Objects.hashCode(sectionName);
+        return result;
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.tianscar.properties;
+
+import java.io.ObjectStreamException;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A section counting its modifications, so that {@link IncrementalStore} can tell whether the
+ * serialized form it cached is still up to date. Every mutator increments the count after the
+ * change is made, and so do the mutators of the collection views, their iterators and entries.
+ *
+ * @author Karstian Lee
+ */
+final class TrackedSection extends Properties {
+
+    private static final long serialVersionUID = -5293780146318852211L;
+
+    private final transient AtomicLong modCount = new AtomicLong();
+
+    long modCount() {
+        return modCount.get();
+    }
+
+    private <T> T modified(T result) {
+        modCount.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Returns the entries without counting a modification, for serializing this section.
+     */
+    Set<Map.Entry<Object, Object>> entries() {
+        return super.entrySet();
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        return modified(super.put(key, value));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return modified(super.remove(key));
+    }
+
+    @Override
+    public void putAll(Map<?, ?> t) {
+        super.putAll(t);
+        modCount.incrementAndGet();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        modCount.incrementAndGet();
+    }
+
+    @Override
+    public Object putIfAbsent(Object key, Object value) {
+        return modified(super.putIfAbsent(key, value));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return modified(super.remove(key, value));
+    }
+
+    @Override
+    public boolean replace(Object key, Object oldValue, Object newValue) {
+        return modified(super.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    public Object replace(Object key, Object value) {
+        return modified(super.replace(key, value));
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+        super.replaceAll(function);
+        modCount.incrementAndGet();
+    }
+
+    @Override
+    public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+        return modified(super.computeIfAbsent(key, mappingFunction));
+    }
+
+    @Override
+    public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        return modified(super.computeIfPresent(key, remappingFunction));
+    }
+
+    @Override
+    public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        return modified(super.compute(key, remappingFunction));
+    }
+
+    @Override
+    public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        return modified(super.merge(key, value, remappingFunction));
+    }
+
+    @Override
+    public Set<Object> keySet() {
+        return new TrackedSet<>(super.keySet());
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return new TrackedEntrySet(super.entrySet());
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return new TrackedCollection<>(super.values());
+    }
+
+    /**
+     * A view counting the modifications made through it. Queries are delegated to the view of
+     * the {@code Hashtable}, which synchronizes on this section.
+     */
+    private class TrackedCollection<E> extends AbstractCollection<E> {
+
+        final Collection<E> view;
+
+        TrackedCollection(Collection<E> view) {
+            this.view = view;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new TrackedIterator<>(view.iterator());
+        }
+
+        @Override
+        public int size() {
+            return view.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return view.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return view.contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return modified(view.remove(o));
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return modified(view.removeAll(c));
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return modified(view.retainAll(c));
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super E> filter) {
+            return modified(view.removeIf(filter));
+        }
+
+        @Override
+        public void clear() {
+            view.clear();
+            modCount.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return view.toString();
+        }
+
+    }
+
+    private class TrackedSet<E> extends TrackedCollection<E> implements Set<E> {
+
+        TrackedSet(Set<E> view) {
+            super(view);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || view.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return view.hashCode();
+        }
+
+    }
+
+    private final class TrackedEntrySet extends TrackedSet<Map.Entry<Object, Object>> {
+
+        TrackedEntrySet(Set<Map.Entry<Object, Object>> view) {
+            super(view);
+        }
+
+        @Override
+        public Iterator<Map.Entry<Object, Object>> iterator() {
+            return new TrackedIterator<Map.Entry<Object, Object>>(view.iterator()) {
+                @Override
+                public Map.Entry<Object, Object> next() {
+                    return new TrackedEntry(super.next());
+                }
+            };
+        }
+
+    }
+
+    private class TrackedIterator<E> implements Iterator<E> {
+
+        private final Iterator<E> iterator;
+
+        TrackedIterator(Iterator<E> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public E next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+            modCount.incrementAndGet();
+        }
+
+    }
+
+    private final class TrackedEntry implements Map.Entry<Object, Object> {
+
+        private final Map.Entry<Object, Object> entry;
+
+        TrackedEntry(Map.Entry<Object, Object> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public Object getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return modified(entry.setValue(value));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || entry.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
+
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        Properties properties = new Properties();
+        properties.putAll(this);
+        return properties;
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * A UTF-8 decoding {@link Reader}, copying runs of ASCII bytes straight into the caller's array
+ * and decoding other sequences by hand. Malformed input is replaced with {@code U+FFFD},
+ * one replacement for each maximal invalid subsequence, the same as the JDK decoder.
+ */
+final class Utf8Reader extends Reader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final ByteBuffer buffer;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int position = 0, limit = 0;
+    private boolean eof = false;
+    private char pending = 0;
+
+    Utf8Reader(InputStream in) {
+        this.in = in;
+        this.buffer = null;
+    }
+
+    Utf8Reader(ByteBuffer buffer) {
+        this.in = null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Moves the undecoded bytes to the start of the buffer and reads more after them.
+     */
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        int remaining = limit - position;
+        System.arraycopy(bytes, position, bytes, 0, remaining);
+        position = 0;
+        limit = remaining;
+        int read;
+        if (in != null) {
+            do {
+                read = in.read(bytes, limit, bytes.length - limit);
+            }
+            while (read == 0);
+        }
+        else {
+            read = Math.min(buffer.remaining(), bytes.length - limit);
+            if (read == 0) read = -1;
+            else buffer.get(bytes, limit, read);
+        }
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private static int sequenceLength(int lead) {
+        if (lead < 0xC2) return 1;
+        else if (lead < 0xE0) return 2;
+        else if (lead < 0xF0) return 3;
+        else if (lead < 0xF5) return 4;
+        else return 1;
+    }
+
+    private static boolean isContinuation(int lead, int index, int b) {
+        if (index == 1) {
+            switch (lead) {
+                case 0xE0: return b >= 0xA0 && b <= 0xBF;
+                case 0xF0: return b >= 0x90 && b <= 0xBF;
+                case 0xF4: return b >= 0x80 && b <= 0x8F;
+            }
+        }
+        return b >= 0x80 && b <= 0xBF;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        final byte[] bytes = this.bytes;
+        int n = off, end = off + len;
+        if (pending != 0) {
+            cbuf[n ++] = pending;
+            pending = 0;
+        }
+        int b, lead, length, available, i, c;
+        while (n < end) {
+            if (position == limit && (n > off || !fill())) break;
+            b = bytes[position];
+            if (b >= 0) {
+                // copy the rest of the ASCII run
+                int stop = position + Math.min(end - n, limit - position);
+                do {
+                    cbuf[n ++] = (char) b;
+                }
+                while (++ position < stop && (b = bytes[position]) >= 0);
+                continue;
+            }
+            lead = b & 0xff;
+            length = sequenceLength(lead);
+            if (length == 1) {
+                cbuf[n ++] = '\uFFFD';
+                position ++;
+                continue;
+            }
+            if (limit - position < length && !eof) {
+                if (n > off) break;
+                fill();
+                continue;
+            }
+            available = Math.min(length, limit - position);
+            c = lead & (0xFF >> (length + 1));
+            for (i = 1; i < available; i ++) {
+                b = bytes[position + i] & 0xff;
+                if (!isContinuation(lead, i, b)) break;
+                c = (c << 6) | (b & 0x3F);
+            }
+            position += i;
+            if (i < length) cbuf[n ++] = '\uFFFD';
+            else if (length < 4) cbuf[n ++] = Character.isSurrogate((char) c) ? '\uFFFD' : (char) c;
+            else {
+                cbuf[n ++] = Character.highSurrogate(c);
+                if (n < end) cbuf[n ++] = Character.lowSurrogate(c);
+                else pending = Character.lowSurrogate(c);
+            }
+        }
+        return n == off ? -1 : n - off;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+    }
+
+}
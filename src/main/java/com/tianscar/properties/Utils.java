@@ -1,9 +1,20 @@
 package com.tianscar.properties;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 final class Utils {
 
@@ -11,112 +22,170 @@ final class Utils {
         throw new UnsupportedOperationException();
     }
 
-    public static boolean matchValue(String[] strings, char value) {
-        return matchValue(strings, Character.toString(value));
+    public static void writeHeader(IniDialect dialect, Writer writer, String comments, boolean writeDate) throws IOException {
+        if (comments != null) writeComment(dialect, writer, comments);
+        if (writeDate) {
+            writer.write(dialect.commentSign());
+            writer.write(new Date().toString());
+            writer.write('\n');
+        }
     }
 
-    public static boolean matchValue(String[] strings, String value) {
-        HashSet<String> commentSignsSet = new HashSet<>(strings.length);
-        commentSignsSet.addAll(Arrays.asList(strings));
-        return commentSignsSet.contains(value);
+    /**
+     * Copies the sections of the specified {@link IniProperties} while holding its monitor, so that
+     * they can be encoded without blocking its mutators for the time of the encoding. The global
+     * properties come first, under the {@code null} name, then the sections in iteration order,
+     * each copied by {@link #entries(Properties)}.
+     */
+    public static Map<String, List<Map.Entry<Object, Object>>> snapshot(IniProperties ini) {
+        Map<String, List<Map.Entry<Object, Object>>> sections = new LinkedHashMap<>();
+        synchronized (ini) {
+            sections.put(null, entries(ini.getSection(null)));
+            for (Map.Entry<String, Properties> sectionEntry : ini.sections().entrySet()) {
+                sections.put(sectionEntry.getKey(), entries(sectionEntry.getValue()));
+            }
+        }
+        return sections;
     }
 
-    public static void writeHeader(String[] commentSigns, String[] delimiters, Writer writer, String comments,
-                                   boolean writeDate, String commentSign, String delimiter) throws IOException {
-        if (!matchValue(commentSigns, commentSign)) throw new IllegalArgumentException("invalid comment sign");
-        if (!matchValue(delimiters, delimiter)) throw new IllegalArgumentException("invalid delimiter");
-        if (comments != null) writeComment(commentSigns, writer, comments, commentSign);
-        if (writeDate) {
-            writer.write(commentSign);
-            writer.write(new Date().toString());
-            writer.write('\n');
+    /**
+     * Copies the entries of the specified section in iteration order while holding its monitor,
+     * which its mutators hold as well. Lazy sections are parsed first.
+     */
+    public static List<Map.Entry<Object, Object>> entries(Properties section) {
+        if (section instanceof LazySection) section = ((LazySection) section).properties();
+        synchronized (section) {
+            List<Map.Entry<Object, Object>> entries = new ArrayList<>(section.size());
+            for (Map.Entry<Object, Object> entry : section instanceof TrackedSection ?
+                    ((TrackedSection) section).entries() : section.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+            return entries;
         }
     }
 
-    public static void storeIni(IniProperties ini, String[] commentSigns, String[] delimiters, Writer writer, String comments, boolean escUnicode,
-                                   boolean writeDate, String commentSign, String delimiter) throws IOException {
-        writeHeader(commentSigns, delimiters, writer, comments, writeDate, commentSign, delimiter);
-        writeProperties(ini.getSection(null), commentSigns, delimiters, writer, escUnicode, delimiter);
-        Properties section;
-        for (Map.Entry<String, Properties> sectionEntry : ini.sections().entrySet()) {
-            if ((section = sectionEntry.getValue()).isEmpty()) continue;
-            writer.write('[');
-            dumpString(commentSigns, delimiters, writer, sectionEntry.getKey(), false, escUnicode);
-            writer.write(']');
-            writer.write('\n');
-            writeProperties(section, commentSigns, delimiters, writer, escUnicode, delimiter);
+    public static void storeIni(IniProperties ini, IniDialect dialect, Writer writer, String comments, boolean escUnicode,
+                                   boolean writeDate) throws IOException {
+        Map<String, List<Map.Entry<Object, Object>>> sections = snapshot(ini);
+        writeHeader(dialect, writer, comments, writeDate);
+        char[] scratch = new char[SCRATCH_SIZE];
+        List<Map.Entry<Object, Object>> section;
+        for (Map.Entry<String, List<Map.Entry<Object, Object>>> sectionEntry : sections.entrySet()) {
+            if (sectionEntry.getKey() == null) writeProperties(sectionEntry.getValue(), dialect, writer, escUnicode, scratch);
+            else if (!(section = sectionEntry.getValue()).isEmpty()) {
+                writeSection(sectionEntry.getKey(), section, dialect, writer, escUnicode, scratch);
+            }
         }
         writer.flush();
     }
 
-    public static void writeProperties(Properties properties, String[] commentSigns, String[] delimiters,
-                                       Writer writer, boolean escUnicode, String delimiter) throws IOException {
+    public static void writeSection(String sectionName, List<Map.Entry<Object, Object>> section, IniDialect dialect,
+                                    Writer writer, boolean escUnicode, char[] scratch) throws IOException {
+        writer.write('[');
+        dumpString(dialect, writer, sectionName, false, escUnicode, scratch);
+        writer.write(']');
+        writer.write('\n');
+        writeProperties(section, dialect, writer, escUnicode, scratch);
+    }
+
+    public static void writeProperties(List<Map.Entry<Object, Object>> entries, IniDialect dialect,
+                                       Writer writer, boolean escUnicode, char[] scratch) throws IOException {
         Object key;
         Object value;
-        for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+        for (Map.Entry<Object, Object> entry : entries) {
             key = entry.getKey();
             value = entry.getValue();
-            dumpString(commentSigns, delimiters, writer, (String) key, true, escUnicode);
-            writer.write(delimiter);
-            dumpString(commentSigns, delimiters, writer, (String) value, false, escUnicode);
+            dumpString(dialect, writer, (String) key, true, escUnicode, scratch);
+            writer.write(dialect.delimiter());
+            dumpString(dialect, writer, (String) value, false, escUnicode, scratch);
             writer.write('\n');
         }
     }
 
-    public static void dumpString(String[] commentSigns, String[] delimiters, Writer writer, String string, boolean isKey, boolean escUnicode) throws IOException {
+    /**
+     * The minimum size of the scratch buffer of {@link #dumpString(IniDialect, Writer, String, boolean, boolean, char[])},
+     * enough for the longest escape sequence, a backslash followed by a Unicode escape.
+     */
+    public static final int SCRATCH_SIZE = 7;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Writes the specified string escaped. Runs of characters that need no escaping are written
+     * with a single {@link Writer#write(String, int, int)}, and escape sequences are built in the
+     * scratch buffer, so nothing is allocated per character.
+     */
+    public static void dumpString(IniDialect dialect, Writer writer, String string, boolean isKey, boolean escUnicode,
+                                  char[] scratch) throws IOException {
+        if (!dialect.escapes()) {
+            writer.write(string);
+            return;
+        }
+        final byte[] classes = dialect.classes;
         int index = 0, length = string.length();
         if (!isKey && index < length && string.charAt(index) == ' ') {
             writer.write("\\ ");
             index ++;
         }
-        for (; index < length; index++) {
+        int run = index;
+        for (; index < length; index ++) {
             char ch = string.charAt(index);
-            switch (ch) {
-                case '\t':
-                    writer.write("\\t");
-                    break;
-                case '\n':
-                    writer.write("\\n");
-                    break;
-                case '\f':
-                    writer.write("\\f");
-                    break;
-                case '\r':
-                    writer.write("\\r");
-                    break;
-                default:
-                    if ("\\".indexOf(ch) >= 0 || matchValue(commentSigns, ch) || matchValue(delimiters, ch) || (isKey && ch == ' ')) {
-                        writer.write('\\');
-                    }
-                    if (ch >= ' ' && ch <= '~') {
-                        writer.write(ch);
-                    }
-                    else if (escUnicode) {
-                        writer.write(toHexaDecimal(ch));
-                    }
-                    else writer.write(ch);
-                    break;
-            }
+            if (isPlain(classes, ch, isKey, escUnicode)) continue;
+            if (run < index) writer.write(string, run, index - run);
+            writer.write(scratch, 0, escape(classes, ch, isKey, escUnicode, scratch));
+            run = index + 1;
         }
+        if (run < length) writer.write(string, run, length - run);
     }
 
-    public static char[] toHexaDecimal(int ch) {
-        char[] hexChars = { '\\', 'u', '0', '0', '0', '0' };
-        int hexChar, index = hexChars.length, copyOfCh = ch;
-        do {
-            hexChar = copyOfCh & 15;
-            if (hexChar > 9) {
-                hexChar = hexChar - 10 + 'A';
-            }
-            else {
-                hexChar += '0';
+    /**
+     * Returns whether the specified character is written as it is by {@link #escape(byte[], char, boolean, boolean, char[])}.
+     */
+    private static boolean isPlain(byte[] classes, char ch, boolean isKey, boolean escUnicode) {
+        if (ch >= ' ' && ch <= '~') return (classes[ch] & IniDialect.ESCAPE) == 0 && !(isKey && ch == ' ');
+        else if (escUnicode) return false;
+        else if (ch >= 256) return true;
+        else return ch != '\t' && ch != '\n' && ch != '\f' && ch != '\r' && (classes[ch] & IniDialect.ESCAPE) == 0;
+    }
+
+    /**
+     * Writes the escape sequence of the specified character to the scratch buffer.
+     * @return the length of the escape sequence
+     */
+    private static int escape(byte[] classes, char ch, boolean isKey, boolean escUnicode, char[] scratch) {
+        switch (ch) {
+            case '\t':
+                return escape('t', scratch);
+            case '\n':
+                return escape('n', scratch);
+            case '\f':
+                return escape('f', scratch);
+            case '\r':
+                return escape('r', scratch);
+        }
+        int length = 0;
+        if ((ch < 256 && (classes[ch] & IniDialect.ESCAPE) != 0) || (isKey && ch == ' ')) {
+            scratch[length ++] = '\\';
+        }
+        if ((ch >= ' ' && ch <= '~') || !escUnicode) scratch[length ++] = ch;
+        else {
+            scratch[length ++] = '\\';
+            scratch[length ++] = 'u';
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                scratch[length ++] = HEX_DIGITS[(ch >> shift) & 15];
             }
-            hexChars[-- index] = (char) hexChar;
-        } while ((copyOfCh >>>= 4) != 0);
-        return hexChars;
+        }
+        return length;
+    }
+
+    private static int escape(char ch, char[] scratch) {
+        scratch[0] = '\\';
+        scratch[1] = ch;
+        return 2;
     }
 
-    public static void writeComment(String[] commentSigns, Writer writer, String comment, String commentSign) throws IOException {
+    public static void writeComment(IniDialect dialect, Writer writer, String comment) throws IOException {
+        char commentSign = dialect.commentSign();
         writer.write(commentSign);
         char[] chars = comment.toCharArray();
         for (int index = 0; index < chars.length; index++) {
@@ -128,7 +197,7 @@ final class Utils {
                     continue;
                 }
                 writer.write('\n');
-                if (indexPlusOne < chars.length && matchValue(commentSigns, chars[indexPlusOne])) {
+                if (indexPlusOne < chars.length && dialect.isCommentSign(chars[indexPlusOne])) {
                     // return char with either comment sign afterward
                     continue;
                 }
@@ -141,398 +210,166 @@ final class Utils {
     }
 
 
-    public static void loadIni(IniProperties ini, String[] commentSigns, String[] delimiters, Reader reader) throws IOException {
-        Properties properties;
-        ini.setSection(null, properties = ini.newSection());
-        boolean readingSectionName = false;
-        String lastSectionName = null;
-        int sectionNameBegin = -1, sectionNameEnd = -1;
-        int mode = NONE, unicode = 0, count = 0;
-        char nextChar;
-        char[] buf = new char[40];
-        int offset = 0, keyLength = -1, intVal;
-        boolean firstChar = true;
-
-        while (true) {
-            intVal = reader.read();
-            if (intVal == -1) {
-                // if mode is UNICODE but has less than 4 hex digits, should
-                // throw an IllegalArgumentException
-                if (mode == UNICODE && count < 4) {
-                    throw new IllegalArgumentException("Invalid Unicode sequence: expected format \\uxxxx");
-                }
-                // if mode is SLASH and no data is read, should append '\u0000'
-                // to buf
-                if (mode == SLASH) {
-                    buf[offset++] = '\u0000';
-                }
-                break;
-            }
-            nextChar = (char) (intVal & 0xff);
+    public static void loadIni(IniProperties ini, IniDialect dialect, Reader reader) throws IOException {
+        parseIni(new IniTokenizer(reader, dialect), new LoadHandler(ini));
+    }
 
-            if (offset == buf.length) {
-                char[] newBuf = new char[buf.length * 2];
-                System.arraycopy(buf, 0, newBuf, 0, offset);
-                buf = newBuf;
-            }
-            if (mode == UNICODE) {
-                int digit = Character.digit(nextChar, 16);
-                if (digit >= 0) {
-                    unicode = (unicode << 4) + digit;
-                    if (++count < 4) {
-                        continue;
-                    }
-                } else if (count <= 4) {
-                    throw new IllegalArgumentException("Invalid Unicode sequence: illegal character");
-                }
-                mode = NONE;
-                buf[offset++] = (char) unicode;
-                if (nextChar != '\n') {
-                    continue;
-                }
-            }
-            if (mode == SLASH) {
-                mode = NONE;
-                switch (nextChar) {
-                    case '\r':
-                        mode = CONTINUE; // Look for a following \n
-                        continue;
-                    case '\n':
-                        mode = IGNORE; // Ignore whitespace on the next line
-                        continue;
-                    case 'b':
-                        nextChar = '\b';
-                        break;
-                    case 'f':
-                        nextChar = '\f';
-                        break;
-                    case 'n':
-                        nextChar = '\n';
-                        break;
-                    case 'r':
-                        nextChar = '\r';
-                        break;
-                    case 't':
-                        nextChar = '\t';
-                        break;
-                    case 'u':
-                        mode = UNICODE;
-                        unicode = count = 0;
-                        continue;
-                }
-            } else {
-                switch (nextChar) {
-                    case '[':
-                        if (!readingSectionName) {
-                            readingSectionName = true;
-                            sectionNameBegin = offset;
-                            continue;
-                        }
-                        else break;
-                    case ']':
-                        sectionNameEnd = offset;
-                        continue;
-                    default:
-                        if (matchValue(commentSigns, nextChar) && firstChar) {
-                            while (true) {
-                                intVal = reader.read();
-                                if (intVal == -1) {
-                                    break;
-                                }
-                                // & 0xff not required
-                                nextChar = (char) intVal;
-                                if (nextChar == '\r' || nextChar == '\n') {
-                                    break;
-                                }
-                            }
-                            continue;
-                        }
-                        else if (!readingSectionName && matchValue(delimiters, nextChar)) {
-                            if (keyLength == -1) { // if parsing the key
-                                mode = NONE;
-                                keyLength = offset;
-                                continue;
-                            }
-                        }
-                        break;
-                    case '\n':
-                        if (mode == CONTINUE) { // Part of a \r\n sequence
-                            mode = IGNORE; // Ignore whitespace on the next line
-                            continue;
-                        }
-                        // fall into the next case
-                    case '\r':
-                        mode = NONE;
-                        firstChar = true;
-                        if (offset > 0 || (offset == 0 && keyLength == 0)) {
-                            if (keyLength == -1) {
-                                keyLength = offset;
-                            }
-                            String temp = new String(buf, 0, offset);
-                            if (readingSectionName && sectionNameBegin != -1 && sectionNameEnd != -1) {
-                                String sectionName = temp.substring(sectionNameBegin, sectionNameEnd);
-                                if (sectionName.startsWith(".")) sectionName = lastSectionName == null ?
-                                        sectionName.substring(1) : lastSectionName + sectionName;
-                                lastSectionName = sectionName;
-                                readingSectionName = false;
-                                sectionNameBegin = sectionNameEnd = -1;
-                                ini.setSection(sectionName, (properties = ini.newSection()));
-                            }
-                            else if (!readingSectionName) {
-                                String key = removeQuotes(temp.substring(0, keyLength));
-                                properties.put(key, removeQuotes(temp.substring(keyLength)));
-                            }
-                        }
-                        keyLength = -1;
-                        offset = 0;
-                        continue;
-                    case '\\':
-                        if (mode == KEY_DONE) {
-                            keyLength = offset;
-                        }
-                        mode = SLASH;
-                        continue;
-                }
-                if (Character.isWhitespace(nextChar)) {
-                    if (mode == CONTINUE) {
-                        mode = IGNORE;
-                    }
-                    // if key length == 0 or value length == 0
-                    if (offset == 0 || offset == keyLength || mode == IGNORE) {
-                        continue;
-                    }
-                    if (keyLength == -1) { // if parsing the key
-                        mode = KEY_DONE;
-                        continue;
-                    }
-                }
-                if (mode == IGNORE || mode == CONTINUE) {
-                    mode = NONE;
-                }
-            }
-            firstChar = false;
-            if (mode == KEY_DONE) {
-                keyLength = offset;
-                mode = NONE;
-            }
-            buf[offset++] = nextChar;
-        }
-        if (keyLength == -1 && offset > 0) {
-            keyLength = offset;
+    public static CharBuffer readFully(Reader reader) throws IOException {
+        char[] chars = new char[8192];
+        int length = 0, read;
+        while ((read = reader.read(chars, length, chars.length - length)) != -1) {
+            if ((length += read) == chars.length) chars = Arrays.copyOf(chars, chars.length * 2);
         }
-        if (keyLength >= 0) {
-            String temp = new String(buf, 0, offset);
-            if (readingSectionName && sectionNameBegin != -1 && sectionNameEnd != -1) {
-                String sectionName = temp.substring(sectionNameBegin, sectionNameEnd);
-                if (sectionName.startsWith(".")) sectionName = lastSectionName == null ?
-                        sectionName.substring(1) : lastSectionName + sectionName;
-                ini.setSection(sectionName, (properties = ini.newSection()));
-            }
-            else if (!readingSectionName) {
-                String key = removeQuotes(temp.substring(0, keyLength));
-                properties.put(key, removeQuotes(temp.substring(keyLength)));
+        return CharBuffer.wrap(chars, 0, length);
+    }
+
+    public static void loadIniLazily(IniProperties ini, IniDialect dialect, Reader reader) throws IOException {
+        CharBuffer buffer = readFully(reader);
+        char[] chars = buffer.array();
+        int length = buffer.limit();
+        IniTokenizer tokenizer = new IniTokenizer(chars, 0, length, dialect);
+        tokenizer.skipEntries();
+        String sectionName = null;
+        int begin = 0, token;
+        while ((token = tokenizer.next()) != IniTokenizer.END) {
+            if (token == IniTokenizer.SECTION) {
+                ini.setSection(sectionName, lazySection(ini, chars, begin, tokenizer.tokenStart()));
+                sectionName = tokenizer.sectionName();
+                begin = tokenizer.position();
             }
         }
+        ini.setSection(sectionName, lazySection(ini, chars, begin, length));
     }
 
-    public static String removeQuotes(String str) {
-        if (str.startsWith("\"") && str.endsWith("\"")) return str.substring(1, str.length() - 1);
-        else if (str.startsWith("'") && str.endsWith("'")) return str.substring(1, str.length() - 1);
-        else return str;
+    private static Properties lazySection(IniProperties ini, char[] chars, int begin, int end) {
+        return begin < end ? new LazySection(ini, chars, begin, end) : ini.newSection();
     }
 
-    private static final int NONE = 0, SLASH = 1, UNICODE = 2, CONTINUE = 3, KEY_DONE = 4, IGNORE = 5;
-    public static void loadProperties(Properties properties, String[] commentSigns,
-                                      String[] delimiters, Reader reader) throws IOException {
-        int mode = NONE, unicode = 0, count = 0;
-        char nextChar;
-        char[] buf = new char[40];
-        int offset = 0, keyLength = -1, intVal;
-        boolean firstChar = true;
-
-        while (true) {
-            intVal = reader.read();
-            if (intVal == -1) {
-                // if mode is UNICODE but has less than 4 hex digits, should
-                // throw an IllegalArgumentException
-                if (mode == UNICODE && count < 4) {
-                    throw new IllegalArgumentException("Invalid Unicode sequence: expected format \\uxxxx");
-                }
-                // if mode is SLASH and no data is read, should append '\u0000'
-                // to buf
-                if (mode == SLASH) {
-                    buf[offset++] = '\u0000';
-                }
-                break;
-            }
-            nextChar = (char) (intVal & 0xff);
+    public static void loadIniParallel(IniProperties ini, IniDialect dialect, Reader reader, ForkJoinPool pool) throws IOException {
+        CharBuffer buffer = readFully(reader);
+        new ParallelIniLoader(ini, dialect, buffer.array(), buffer.limit()).load(pool);
+    }
 
-            if (offset == buf.length) {
-                char[] newBuf = new char[buf.length * 2];
-                System.arraycopy(buf, 0, newBuf, 0, offset);
-                buf = newBuf;
-            }
-            if (mode == UNICODE) {
-                int digit = Character.digit(nextChar, 16);
-                if (digit >= 0) {
-                    unicode = (unicode << 4) + digit;
-                    if (++count < 4) {
-                        continue;
-                    }
-                } else if (count <= 4) {
-                    throw new IllegalArgumentException("Invalid Unicode sequence: illegal character");
-                }
-                mode = NONE;
-                buf[offset++] = (char) unicode;
-                if (nextChar != '\n') {
-                    continue;
-                }
-            }
-            if (mode == SLASH) {
-                mode = NONE;
-                switch (nextChar) {
-                    case '\r':
-                        mode = CONTINUE; // Look for a following \n
-                        continue;
-                    case '\n':
-                        mode = IGNORE; // Ignore whitespace on the next line
-                        continue;
-                    case 'b':
-                        nextChar = '\b';
-                        break;
-                    case 'f':
-                        nextChar = '\f';
-                        break;
-                    case 'n':
-                        nextChar = '\n';
-                        break;
-                    case 'r':
-                        nextChar = '\r';
-                        break;
-                    case 't':
-                        nextChar = '\t';
-                        break;
-                    case 'u':
-                        mode = UNICODE;
-                        unicode = count = 0;
-                        continue;
-                }
-            } else {
-                switch (nextChar) {
-                    default:
-                        if (matchValue(commentSigns, nextChar) && firstChar) {
-                            while (true) {
-                                intVal = reader.read();
-                                if (intVal == -1) {
-                                    break;
-                                }
-                                // & 0xff not required
-                                nextChar = (char) intVal;
-                                if (nextChar == '\r' || nextChar == '\n') {
-                                    break;
-                                }
-                            }
-                            continue;
-                        }
-                        else if (matchValue(delimiters, nextChar)) {
-                            if (keyLength == -1) { // if parsing the key
-                                mode = NONE;
-                                keyLength = offset;
-                                continue;
-                            }
-                        }
-                        break;
-                    case '\n':
-                        if (mode == CONTINUE) { // Part of a \r\n sequence
-                            mode = IGNORE; // Ignore whitespace on the next line
-                            continue;
-                        }
-                        // fall into the next case
-                    case '\r':
-                        mode = NONE;
-                        firstChar = true;
-                        if (offset > 0 || (offset == 0 && keyLength == 0)) {
-                            if (keyLength == -1) {
-                                keyLength = offset;
-                            }
-                            String temp = new String(buf, 0, offset);
-                            String key = temp.substring(0, keyLength);
-                            properties.put(key, temp.substring(keyLength));
-                        }
-                        keyLength = -1;
-                        offset = 0;
-                        continue;
-                    case '\\':
-                        if (mode == KEY_DONE) {
-                            keyLength = offset;
-                        }
-                        mode = SLASH;
-                        continue;
-                }
-                if (Character.isWhitespace(nextChar)) {
-                    if (mode == CONTINUE) {
-                        mode = IGNORE;
-                    }
-                    // if key length == 0 or value length == 0
-                    if (offset == 0 || offset == keyLength || mode == IGNORE) {
-                        continue;
-                    }
-                    if (keyLength == -1) { // if parsing the key
-                        mode = KEY_DONE;
-                        continue;
-                    }
-                }
-                if (mode == IGNORE || mode == CONTINUE) {
-                    mode = NONE;
-                }
-            }
-            firstChar = false;
-            if (mode == KEY_DONE) {
-                keyLength = offset;
-                mode = NONE;
+    /**
+     * Opens a reader over the specified stream, see {@link ByteBufferReader#skipByteOrderMark(ByteBuffer, Charset)}
+     * for the byte order mark handling. UTF-8 is decoded by {@link Utf8Reader}.
+     */
+    public static Reader newReader(InputStream in, Charset charset) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 3);
+        byte[] head = new byte[3];
+        int length = 0, read;
+        while (length < head.length && (read = pushback.read(head, length, head.length - length)) != -1) {
+            length += read;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(head, 0, length);
+        charset = ByteBufferReader.skipByteOrderMark(buffer, charset);
+        pushback.unread(head, buffer.position(), buffer.remaining());
+        if (StandardCharsets.UTF_8.equals(charset)) return new Utf8Reader(pushback);
+        else return new InputStreamReader(pushback, charset);
+    }
+
+    /**
+     * Opens a buffered writer over the specified stream. UTF-8 and ISO-8859-1 are encoded by {@link EncodingWriter}.
+     */
+    public static Writer newWriter(OutputStream out, Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) return new EncodingWriter(out, false);
+        else if (StandardCharsets.ISO_8859_1.equals(charset)) return new EncodingWriter(out, true);
+        else return new BufferedWriter(new OutputStreamWriter(out, charset));
+    }
+
+    /**
+     * Returns whether characters outside printable ASCII are written as Unicode escapes in the specified charset.
+     */
+    public static boolean isEscUnicode(Charset charset) {
+        return !charset.name().toLowerCase().contains("utf");
+    }
+
+    /**
+     * Returns whether the specified charset encodes a text as the concatenation of its separately
+     * encoded parts, which is not the case of charsets writing a byte order mark, such as UTF-16.
+     */
+    public static boolean isStateless(Charset charset) {
+        byte[] one = "a".getBytes(charset);
+        byte[] two = "aa".getBytes(charset);
+        if (two.length != one.length * 2) return false;
+        for (int i = 0; i < two.length; i ++) {
+            if (two[i] != one[i % one.length]) return false;
+        }
+        return true;
+    }
+
+    public static void parseIni(IniTokenizer tokenizer, IniContentHandler handler) throws IOException {
+        int token;
+        while ((token = tokenizer.next()) != IniTokenizer.END) {
+            switch (token) {
+                case IniTokenizer.SECTION:
+                    handler.startSection(tokenizer.sectionName());
+                    break;
+                case IniTokenizer.ENTRY:
+                    handler.entry(tokenizer.key(), tokenizer.value());
+                    break;
+                case IniTokenizer.COMMENT:
+                    handler.comment(tokenizer.comment());
+                    break;
             }
-            buf[offset++] = nextChar;
         }
-        if (keyLength == -1 && offset > 0) {
-            keyLength = offset;
+    }
+
+    static final class LoadHandler implements IniContentHandler {
+        private final IniProperties ini;
+        private Properties properties;
+        LoadHandler(IniProperties ini) {
+            this.ini = ini;
+            ini.setSection(null, properties = ini.newSection());
+        }
+        @Override
+        public void startSection(String sectionName) {
+            ini.setSection(sectionName, (properties = ini.newSection()));
+        }
+        @Override
+        public void entry(String key, String value) {
+            properties.put(key, value);
         }
-        if (keyLength >= 0) {
-            String temp = new String(buf, 0, offset);
-            String key = temp.substring(0, keyLength);
-            properties.put(key, temp.substring(keyLength));
+    }
+
+    public static void loadProperties(Properties properties, IniDialect dialect, Reader reader) throws IOException {
+        IniTokenizer tokenizer = new IniTokenizer(reader, dialect);
+        tokenizer.propertiesSyntax();
+        while (tokenizer.next() != IniTokenizer.END) {
+            properties.put(tokenizer.key(), tokenizer.value());
         }
     }
 
-    public static boolean hasParentSection(String sectionName) {
-        return sectionName != null && sectionName.lastIndexOf('.') != -1;
+    public static boolean hasParentSection(String sectionName, char separator) {
+        return sectionName != null && sectionName.lastIndexOf(separator) != -1;
     }
 
-    public static String parentSectionName(String sectionName) {
+    public static String parentSectionName(String sectionName, char separator) {
         if (sectionName == null) return null;
         else {
-            int dotIndex = sectionName.lastIndexOf('.');
-            if (dotIndex == -1) return null;
-            else return sectionName.substring(0, dotIndex);
+            int separatorIndex = sectionName.lastIndexOf(separator);
+            if (separatorIndex == -1) return null;
+            else return sectionName.substring(0, separatorIndex);
         }
     }
 
-    public static String plainSectionName(String sectionName) {
+    public static String plainSectionName(String sectionName, char separator) {
         if (sectionName == null) return null;
         else {
-            int dotIndex = sectionName.lastIndexOf('.');
-            if (dotIndex == -1) return sectionName;
-            else return sectionName.substring(dotIndex + 1);
+            int separatorIndex = sectionName.lastIndexOf(separator);
+            if (separatorIndex == -1) return sectionName;
+            else return sectionName.substring(separatorIndex + 1);
         }
     }
 
-    public static String plainParentSectionName(String sectionName) {
+    public static String plainParentSectionName(String sectionName, char separator) {
         if (sectionName == null) return null;
         else {
-            String parentSectionName = parentSectionName(sectionName);
+            String parentSectionName = parentSectionName(sectionName, separator);
             if (parentSectionName == null) return null;
-            int dotIndex = parentSectionName.lastIndexOf('.');
-            if (dotIndex == -1) return parentSectionName;
-            else return parentSectionName.substring(dotIndex + 1);
+            int separatorIndex = parentSectionName.lastIndexOf(separator);
+            if (separatorIndex == -1) return parentSectionName;
+            else return parentSectionName.substring(separatorIndex + 1);
         }
     }
 
@@ -0,0 +1,430 @@
+package com.tianscar.properties;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+public class TokenizeIniTest {
+
+    private static final String ALPHABET = "ab =:#;[]\\\"'\n\r\t.uU01fn\u00e9\u4e2d\u3000";
+
+    public static void main(String[] args) {
+        try {
+            Random random = new Random(42);
+            boolean propertiesEquals = true, iniEquals = true;
+            for (int i = 0; i < 20000; i ++) {
+                String text = randomText(random);
+                propertiesEquals &= loadProperties(text, false).equals(loadProperties(text, true));
+                iniEquals &= loadIni(text, false).equals(loadIni(text, true));
+            }
+            System.out.println("Equals (properties): " + propertiesEquals);
+            System.out.println("Equals (ini): " + iniEquals);
+        }
+        catch (Throwable t) {
+            throw new RuntimeException("TokenizeIni failed: \n" + t);
+        }
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(60);
+        for (int i = 0; i < length; i ++) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+
+    private static Object loadIni(String text, boolean legacy) throws IOException {
+        IniProperties ini = new IniProperties();
+        try {
+            if (legacy) legacyLoadIni(ini, IniDialect.DEFAULT, new StringReader(text));
+            else Utils.loadIni(ini, IniDialect.DEFAULT, new StringReader(text));
+        }
+        catch (RuntimeException e) {
+            // a ']' before the '[' of a section header fails with the same exception in both loaders
+            return e.toString();
+        }
+        return Arrays.asList(ini.globalProperties(), ini.sections());
+    }
+
+    private static Object loadProperties(String text, boolean legacy) throws IOException {
+        Properties properties = new Properties();
+        try {
+            if (legacy) legacyLoadProperties(properties, IniDialect.DEFAULT, new StringReader(text));
+            else Utils.loadProperties(properties, IniDialect.DEFAULT, new StringReader(text));
+        }
+        catch (IllegalArgumentException e) {
+            return e.toString();
+        }
+        return properties;
+    }
+
+    // the loop loadIni used before it was moved onto IniTokenizer
+    private static void legacyLoadIni(IniProperties ini, IniDialect dialect, Reader reader) throws IOException {
+        Properties properties;
+        ini.setSection(null, properties = ini.newSection());
+        boolean readingSectionName = false;
+        String lastSectionName = null;
+        int sectionNameBegin = -1, sectionNameEnd = -1;
+        int mode = NONE, unicode = 0, count = 0;
+        char nextChar;
+        char[] buf = new char[40];
+        int offset = 0, keyLength = -1, intVal;
+        boolean firstChar = true;
+
+        while (true) {
+            intVal = reader.read();
+            if (intVal == -1) {
+                // if mode is UNICODE but has less than 4 hex digits, should
+                // throw an IllegalArgumentException
+                if (mode == UNICODE && count < 4) {
+                    throw new IllegalArgumentException("Invalid Unicode sequence: expected format \\uxxxx");
+                }
+                // if mode is SLASH and no data is read, should append '\u0000'
+                // to buf
+                if (mode == SLASH) {
+                    buf[offset++] = '\u0000';
+                }
+                break;
+            }
+            nextChar = (char) intVal;
+
+            if (offset == buf.length) {
+                char[] newBuf = new char[buf.length * 2];
+                System.arraycopy(buf, 0, newBuf, 0, offset);
+                buf = newBuf;
+            }
+            if (mode == UNICODE) {
+                int digit = Character.digit(nextChar, 16);
+                if (digit >= 0) {
+                    unicode = (unicode << 4) + digit;
+                    if (++count < 4) {
+                        continue;
+                    }
+                } else if (count <= 4) {
+                    throw new IllegalArgumentException("Invalid Unicode sequence: illegal character");
+                }
+                mode = NONE;
+                buf[offset++] = (char) unicode;
+                if (nextChar != '\n') {
+                    continue;
+                }
+            }
+            if (mode == SLASH) {
+                mode = NONE;
+                switch (nextChar) {
+                    case '\r':
+                        mode = CONTINUE; // Look for a following \n
+                        continue;
+                    case '\n':
+                        mode = IGNORE; // Ignore whitespace on the next line
+                        continue;
+                    case 'b':
+                        nextChar = '\b';
+                        break;
+                    case 'f':
+                        nextChar = '\f';
+                        break;
+                    case 'n':
+                        nextChar = '\n';
+                        break;
+                    case 'r':
+                        nextChar = '\r';
+                        break;
+                    case 't':
+                        nextChar = '\t';
+                        break;
+                    case 'u':
+                        mode = UNICODE;
+                        unicode = count = 0;
+                        continue;
+                }
+            } else {
+                switch (nextChar) {
+                    case '[':
+                        if (!readingSectionName) {
+                            readingSectionName = true;
+                            sectionNameBegin = offset;
+                            continue;
+                        }
+                        else break;
+                    case ']':
+                        sectionNameEnd = offset;
+                        continue;
+                    default:
+                        if (dialect.isCommentSign(nextChar) && firstChar) {
+                            while (true) {
+                                intVal = reader.read();
+                                if (intVal == -1) {
+                                    break;
+                                }
+                                // & 0xff not required
+                                nextChar = (char) intVal;
+                                if (nextChar == '\r' || nextChar == '\n') {
+                                    break;
+                                }
+                            }
+                            continue;
+                        }
+                        else if (!readingSectionName && dialect.isDelimiter(nextChar)) {
+                            if (keyLength == -1) { // if parsing the key
+                                mode = NONE;
+                                keyLength = offset;
+                                continue;
+                            }
+                        }
+                        break;
+                    case '\n':
+                        if (mode == CONTINUE) { // Part of a \r\n sequence
+                            mode = IGNORE; // Ignore whitespace on the next line
+                            continue;
+                        }
+                        // fall into the next case
+                    case '\r':
+                        mode = NONE;
+                        firstChar = true;
+                        if (offset > 0 || (offset == 0 && keyLength == 0)) {
+                            if (keyLength == -1) {
+                                keyLength = offset;
+                            }
+                            String temp = new String(buf, 0, offset);
+                            if (readingSectionName && sectionNameBegin != -1 && sectionNameEnd != -1) {
+                                String sectionName = temp.substring(sectionNameBegin, sectionNameEnd);
+                                if (sectionName.startsWith(".")) sectionName = lastSectionName == null ?
+                                        sectionName.substring(1) : lastSectionName + sectionName;
+                                lastSectionName = sectionName;
+                                readingSectionName = false;
+                                sectionNameBegin = sectionNameEnd = -1;
+                                ini.setSection(sectionName, (properties = ini.newSection()));
+                            }
+                            else if (!readingSectionName) {
+                                String key = legacyRemoveQuotes(temp.substring(0, keyLength));
+                                properties.put(key, legacyRemoveQuotes(temp.substring(keyLength)));
+                            }
+                        }
+                        keyLength = -1;
+                        offset = 0;
+                        continue;
+                    case '\\':
+                        if (mode == KEY_DONE) {
+                            keyLength = offset;
+                        }
+                        mode = SLASH;
+                        continue;
+                }
+                if (Character.isWhitespace(nextChar)) {
+                    if (mode == CONTINUE) {
+                        mode = IGNORE;
+                    }
+                    // if key length == 0 or value length == 0
+                    if (offset == 0 || offset == keyLength || mode == IGNORE) {
+                        continue;
+                    }
+                    if (keyLength == -1) { // if parsing the key
+                        mode = KEY_DONE;
+                        continue;
+                    }
+                }
+                if (mode == IGNORE || mode == CONTINUE) {
+                    mode = NONE;
+                }
+            }
+            firstChar = false;
+            if (mode == KEY_DONE) {
+                keyLength = offset;
+                mode = NONE;
+            }
+            buf[offset++] = nextChar;
+        }
+        if (keyLength == -1 && offset > 0) {
+            keyLength = offset;
+        }
+        if (keyLength >= 0) {
+            String temp = new String(buf, 0, offset);
+            if (readingSectionName && sectionNameBegin != -1 && sectionNameEnd != -1) {
+                String sectionName = temp.substring(sectionNameBegin, sectionNameEnd);
+                if (sectionName.startsWith(".")) sectionName = lastSectionName == null ?
+                        sectionName.substring(1) : lastSectionName + sectionName;
+                ini.setSection(sectionName, (properties = ini.newSection()));
+            }
+            else if (!readingSectionName) {
+                String key = legacyRemoveQuotes(temp.substring(0, keyLength));
+                properties.put(key, legacyRemoveQuotes(temp.substring(keyLength)));
+            }
+        }
+    }
+
+    // a single quote character is kept, it used to throw StringIndexOutOfBoundsException
+    private static String legacyRemoveQuotes(String str) {
+        if (str.length() < 2) return str;
+        else if (str.startsWith("\"") && str.endsWith("\"")) return str.substring(1, str.length() - 1);
+        else if (str.startsWith("'") && str.endsWith("'")) return str.substring(1, str.length() - 1);
+        else return str;
+    }
+
+    // the state machine loadProperties used before it was moved onto IniTokenizer
+    private static final int NONE = 0, SLASH = 1, UNICODE = 2, CONTINUE = 3, KEY_DONE = 4, IGNORE = 5;
+    private static void legacyLoadProperties(Properties properties, IniDialect dialect, Reader reader) throws IOException {
+        int mode = NONE, unicode = 0, count = 0;
+        char nextChar;
+        char[] buf = new char[40];
+        int offset = 0, keyLength = -1, intVal;
+        boolean firstChar = true;
+
+        while (true) {
+            intVal = reader.read();
+            if (intVal == -1) {
+                // if mode is UNICODE but has less than 4 hex digits, should
+                // throw an IllegalArgumentException
+                if (mode == UNICODE && count < 4) {
+                    throw new IllegalArgumentException("Invalid Unicode sequence: expected format \\uxxxx");
+                }
+                // if mode is SLASH and no data is read, should append '\u0000'
+                // to buf
+                if (mode == SLASH) {
+                    buf[offset++] = '\u0000';
+                }
+                break;
+            }
+            nextChar = (char) intVal;
+
+            if (offset == buf.length) {
+                char[] newBuf = new char[buf.length * 2];
+                System.arraycopy(buf, 0, newBuf, 0, offset);
+                buf = newBuf;
+            }
+            if (mode == UNICODE) {
+                int digit = Character.digit(nextChar, 16);
+                if (digit >= 0) {
+                    unicode = (unicode << 4) + digit;
+                    if (++count < 4) {
+                        continue;
+                    }
+                } else if (count <= 4) {
+                    throw new IllegalArgumentException("Invalid Unicode sequence: illegal character");
+                }
+                mode = NONE;
+                buf[offset++] = (char) unicode;
+                if (nextChar != '\n') {
+                    continue;
+                }
+            }
+            if (mode == SLASH) {
+                mode = NONE;
+                switch (nextChar) {
+                    case '\r':
+                        mode = CONTINUE; // Look for a following \n
+                        continue;
+                    case '\n':
+                        mode = IGNORE; // Ignore whitespace on the next line
+                        continue;
+                    case 'b':
+                        nextChar = '\b';
+                        break;
+                    case 'f':
+                        nextChar = '\f';
+                        break;
+                    case 'n':
+                        nextChar = '\n';
+                        break;
+                    case 'r':
+                        nextChar = '\r';
+                        break;
+                    case 't':
+                        nextChar = '\t';
+                        break;
+                    case 'u':
+                        mode = UNICODE;
+                        unicode = count = 0;
+                        continue;
+                }
+            } else {
+                switch (nextChar) {
+                    default:
+                        if (dialect.isCommentSign(nextChar) && firstChar) {
+                            while (true) {
+                                intVal = reader.read();
+                                if (intVal == -1) {
+                                    break;
+                                }
+                                // & 0xff not required
+                                nextChar = (char) intVal;
+                                if (nextChar == '\r' || nextChar == '\n') {
+                                    break;
+                                }
+                            }
+                            continue;
+                        }
+                        else if (dialect.isDelimiter(nextChar)) {
+                            if (keyLength == -1) { // if parsing the key
+                                mode = NONE;
+                                keyLength = offset;
+                                continue;
+                            }
+                        }
+                        break;
+                    case '\n':
+                        if (mode == CONTINUE) { // Part of a \r\n sequence
+                            mode = IGNORE; // Ignore whitespace on the next line
+                            continue;
+                        }
+                        // fall into the next case
+                    case '\r':
+                        mode = NONE;
+                        firstChar = true;
+                        if (offset > 0 || (offset == 0 && keyLength == 0)) {
+                            if (keyLength == -1) {
+                                keyLength = offset;
+                            }
+                            String temp = new String(buf, 0, offset);
+                            String key = temp.substring(0, keyLength);
+                            properties.put(key, temp.substring(keyLength));
+                        }
+                        keyLength = -1;
+                        offset = 0;
+                        continue;
+                    case '\\':
+                        if (mode == KEY_DONE) {
+                            keyLength = offset;
+                        }
+                        mode = SLASH;
+                        continue;
+                }
+                if (Character.isWhitespace(nextChar)) {
+                    if (mode == CONTINUE) {
+                        mode = IGNORE;
+                    }
+                    // if key length == 0 or value length == 0
+                    if (offset == 0 || offset == keyLength || mode == IGNORE) {
+                        continue;
+                    }
+                    if (keyLength == -1) { // if parsing the key
+                        mode = KEY_DONE;
+                        continue;
+                    }
+                }
+                if (mode == IGNORE || mode == CONTINUE) {
+                    mode = NONE;
+                }
+            }
+            firstChar = false;
+            if (mode == KEY_DONE) {
+                keyLength = offset;
+                mode = NONE;
+            }
+            buf[offset++] = nextChar;
+        }
+        if (keyLength == -1 && offset > 0) {
+            keyLength = offset;
+        }
+        if (keyLength >= 0) {
+            String temp = new String(buf, 0, offset);
+            String key = temp.substring(0, keyLength);
+            properties.put(key, temp.substring(keyLength));
+        }
+    }
+
+}
@@ -1,6 +1,18 @@
 package com.tianscar.properties.test;
 
 import com.tianscar.properties.IniProperties;
+import com.tianscar.properties.LayeredIniProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 
 public class LoadIniTest {
 
@@ -11,6 +23,24 @@ public class LoadIniTest {
             IniProperties iniXML = new IniProperties();
             iniXML.loadFromXML(LoadIniTest.class.getClassLoader().getResourceAsStream("test.xml"));
             System.out.println("Equals: " + ini.equals(iniXML));
+            IniProperties iniUTF8 = new IniProperties();
+            iniUTF8.load(LoadIniTest.class.getClassLoader().getResourceAsStream("test.ini"), StandardCharsets.UTF_8);
+            System.out.println("Equals (UTF-8): " + ini.equals(iniUTF8));
+            Path dir = Paths.get(LoadIniTest.class.getClassLoader().getResource("test.ini").toURI()).getParent();
+            System.out.println("Equals (loadAll): " + ini.equals(IniProperties.loadAll(dir, "*.ini").get(dir.resolve("test.ini"))));
+            LayeredIniProperties layered = new LayeredIniProperties(iniXML);
+            layered.switchSection("section_1");
+            System.out.println("Equals (layered): " + "0".equals(layered.getProperty("val0")));
+            System.out.println("Equals (layered, concurrent): " + layeredConcurrently());
+            System.out.println("Equals (view): " + ("0".equals(ini.section("section_1").getProperty("val0"))
+                    && "0".equals(layered.section("section_1").section(".nested_1").getProperty("nested_val0"))
+                    && ini.currentSectionName() == null));
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            ini.writeSnapshot(snapshot);
+            IniProperties iniSnapshot = new IniProperties();
+            iniSnapshot.readSnapshot(new ByteArrayInputStream(snapshot.toByteArray()));
+            System.out.println("Equals (snapshot): " + ini.equals(iniSnapshot));
+            System.out.println("Equals (cached): " + loadCached(ini, dir.resolve("test.ini")));
             ini.listAll(System.out);
         }
         catch (Throwable t) {
@@ -18,4 +48,73 @@ public class LoadIniTest {
         }
     }
 
+    private static boolean loadCached(IniProperties ini, Path source) throws IOException {
+        Path dir = Files.createTempDirectory("cached");
+        Path path = Files.copy(source, dir.resolve("test.ini"));
+        Path snapshot = dir.resolve("test.ini.snapshot");
+        FileTime untouched = FileTime.fromMillis(0);
+        try {
+            // a miss parses the file and writes the snapshot
+            IniProperties miss = new IniProperties();
+            miss.loadCached(path);
+            if (!Files.exists(snapshot) || !ini.equals(miss)) return false;
+            // a hit reads the snapshot and leaves it as it is
+            Files.setLastModifiedTime(snapshot, untouched);
+            IniProperties hit = new IniProperties();
+            hit.loadCached(path);
+            if (!untouched.equals(Files.getLastModifiedTime(snapshot)) || !ini.equals(hit)) return false;
+            // a modified source is parsed again
+            Files.write(path, ("modified=true\n" + new String(Files.readAllBytes(source), StandardCharsets.ISO_8859_1))
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            IniProperties modified = new IniProperties();
+            modified.loadCached(path);
+            if (untouched.equals(Files.getLastModifiedTime(snapshot)) || !"true".equals(modified.getProperty("modified"))) return false;
+            // a corrupted snapshot is ignored and rewritten
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[bytes.length / 2] ^= 0xFF;
+            Files.write(snapshot, bytes);
+            Files.setLastModifiedTime(snapshot, untouched);
+            IniProperties corrupted = new IniProperties();
+            corrupted.loadCached(path);
+            return !untouched.equals(Files.getLastModifiedTime(snapshot)) && modified.equals(corrupted);
+        }
+        finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static boolean layeredConcurrently() throws InterruptedException {
+        CountDownLatch resolving = new CountDownLatch(1), replaced = new CountDownLatch(1);
+        IniProperties previous = new IniProperties();
+        // holds the resolving thread between reading the previous value and caching it
+        previous.sections().put("section", new Properties() {
+            @Override
+            public Object get(Object key) {
+                Object value = super.get(key);
+                resolving.countDown();
+                try {
+                    replaced.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return value;
+            }
+        });
+        previous.sections().get("section").put("key", "previous");
+        IniProperties next = new IniProperties();
+        next.switchSection("section");
+        next.setProperty("key", "next");
+        LayeredIniProperties layered = new LayeredIniProperties(previous);
+        Thread reader = new Thread(() -> layered.section("section").getProperty("key"));
+        reader.start();
+        resolving.await();
+        layered.setLayer(0, next);
+        replaced.countDown();
+        reader.join();
+        return "next".equals(layered.section("section").getProperty("key"));
+    }
+
 }
@@ -0,0 +1,60 @@
+package com.tianscar.properties.test;
+
+import com.tianscar.properties.IniContentHandler;
+import com.tianscar.properties.IniProperties;
+import com.tianscar.properties.IniReader;
+
+import java.io.InputStreamReader;
+import java.util.Properties;
+
+public class ReadIniTest {
+
+    public static void main(String[] args) {
+        try {
+            IniProperties ini = new IniProperties();
+            ini.load(ReadIniTest.class.getClassLoader().getResourceAsStream("test.ini"));
+            IniProperties iniRead = new IniProperties();
+            try (IniReader reader = new IniReader(new InputStreamReader(
+                    ReadIniTest.class.getClassLoader().getResourceAsStream("test.ini"), "ISO-8859-1"))) {
+                int event;
+                while ((event = reader.next()) != IniReader.END) {
+                    switch (event) {
+                        case IniReader.SECTION_START:
+                            System.out.println("[" + reader.sectionName() + "]");
+                            iniRead.sections().put(reader.sectionName(), new Properties());
+                            break;
+                        case IniReader.ENTRY:
+                            System.out.println(reader.key() + " = " + reader.value());
+                            iniRead.switchSection(reader.sectionName());
+                            iniRead.setProperty(reader.key(), reader.value());
+                            break;
+                        case IniReader.COMMENT:
+                            System.out.println("#" + reader.comment());
+                            break;
+                    }
+                }
+            }
+            System.out.println("Equals: " + ini.equals(iniRead));
+            IniProperties iniParsed = new IniProperties();
+            try (IniReader reader = new IniReader(new InputStreamReader(
+                    ReadIniTest.class.getClassLoader().getResourceAsStream("test.ini"), "ISO-8859-1"))) {
+                reader.parse(new IniContentHandler() {
+                    @Override
+                    public void startSection(String sectionName) {
+                        iniParsed.sections().put(sectionName, new Properties());
+                        iniParsed.switchSection(sectionName);
+                    }
+                    @Override
+                    public void entry(String key, String value) {
+                        iniParsed.setProperty(key, value);
+                    }
+                });
+            }
+            System.out.println("Equals: " + ini.equals(iniParsed));
+        }
+        catch (Throwable t) {
+            throw new RuntimeException("ReadIni failed: \n" + t);
+        }
+    }
+
+}
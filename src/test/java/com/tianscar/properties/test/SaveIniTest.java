@@ -1,10 +1,26 @@
 package com.tianscar.properties.test;
 
+import com.tianscar.properties.IniDocument;
 import com.tianscar.properties.IniProperties;
+import com.tianscar.properties.IniWriter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class SaveIniTest {
 
@@ -21,10 +37,126 @@ public class SaveIniTest {
             ini.setProperty("val3", "3");
             ini.store(new FileWriter("out.ini"), null);
             ini.storeToXML(Files.newOutputStream(Paths.get("out.xml")), null);
+            ini.store(Paths.get("out_atomic.ini"), null);
+            IniProperties iniAtomic = new IniProperties();
+            iniAtomic.load(Paths.get("out_atomic.ini"));
+            System.out.println("Equals (atomic): " + ini.equals(iniAtomic));
+            System.out.println("Equals (atomic, attributes): " + keepsAttributes(ini));
+            ini.setIncrementalStore(true);
+            ini.store(Paths.get("out_atomic.ini"), null);
+            ini.setProperty("val3", "33");
+            ini.store(Paths.get("out_atomic.ini"), null);
+            iniAtomic.load(Paths.get("out_atomic.ini"));
+            System.out.println("Equals (incremental): " + ini.equals(iniAtomic));
+            Set<Map.Entry<Object, Object>> view = ini.sections().get("section_1").entrySet();
+            ini.store(Paths.get("out_atomic.ini"), null);
+            for (Map.Entry<Object, Object> entry : view) entry.setValue("changed");
+            ini.store(Paths.get("out_atomic.ini"), null);
+            iniAtomic.load(Paths.get("out_atomic.ini"));
+            System.out.println("Equals (incremental, view): " + ini.equals(iniAtomic));
+            ini.sections().get("section_1").setProperty("val0", "0");
+            ini.setIncrementalStore(false);
+            ini.setProperty("val3", "3");
+            StringWriter stringWriter = new StringWriter();
+            try (IniWriter writer = new IniWriter(stringWriter)) {
+                writer.comment("streamed");
+                writer.entry("val", "null");
+                writer.startSection("section_1");
+                writer.entry("val0", "0");
+                writer.startSection("section_2");
+                writer.entry("val2", "2");
+                writer.startSection("section_2.section_3");
+                writer.entry("val3", "3");
+            }
+            IniProperties iniStreamed = new IniProperties();
+            iniStreamed.load(new StringReader(stringWriter.toString()));
+            System.out.println("Equals (streamed): " + ini.equals(iniStreamed));
+            IniDocument document = new IniDocument();
+            document.load(new StringReader(stringWriter.toString()));
+            document.set("section_2", "val2", "22");
+            StringWriter documentWriter = new StringWriter();
+            document.store(documentWriter);
+            IniProperties iniDocument = new IniProperties();
+            iniDocument.load(new StringReader(documentWriter.toString()));
+            iniStreamed.switchSection("section_2");
+            iniStreamed.setProperty("val2", "22");
+            System.out.println("Equals (document): " + (iniStreamed.equals(iniDocument)
+                    && documentWriter.toString().equals(stringWriter.toString().replace("val2=2", "val2=22"))));
+            ByteArrayOutputStream parallelOut = new ByteArrayOutputStream();
+            ini.storeParallel(parallelOut, null, StandardCharsets.UTF_8);
+            IniProperties iniParallel = new IniProperties();
+            iniParallel.load(new ByteArrayInputStream(parallelOut.toByteArray()), StandardCharsets.UTF_8);
+            System.out.println("Equals (parallel): " + ini.equals(iniParallel));
+            IniProperties large = new IniProperties();
+            for (int section = 0; section < 100; section ++) {
+                large.switchSection("section_" + section);
+                for (int key = 0; key < 100; key ++) {
+                    large.setProperty("val" + key, section + "_" + key);
+                }
+            }
+            ForkJoinPool pool = new ForkJoinPool(4);
+            ByteArrayOutputStream largeOut = new ByteArrayOutputStream();
+            large.store(largeOut, null, StandardCharsets.UTF_8);
+            ByteArrayOutputStream largeParallelOut = new ByteArrayOutputStream();
+            large.storeParallel(largeParallelOut, null, StandardCharsets.UTF_8, pool);
+            ByteArrayOutputStream largeXMLOut = new ByteArrayOutputStream();
+            large.storeToXML(largeXMLOut, null, StandardCharsets.UTF_8);
+            ByteArrayOutputStream largeXMLParallelOut = new ByteArrayOutputStream();
+            large.storeToXMLParallel(largeXMLParallelOut, null, StandardCharsets.UTF_8, pool);
+            ByteArrayOutputStream largeCompactOut = new ByteArrayOutputStream();
+            large.storeToXML(largeCompactOut, null, StandardCharsets.UTF_8, true);
+            ByteArrayOutputStream largeCompactParallelOut = new ByteArrayOutputStream();
+            large.storeToXMLParallel(largeCompactParallelOut, null, StandardCharsets.UTF_8, true, pool);
+            pool.shutdown();
+            System.out.println("Equals (parallel, forked): " + (withoutDate(largeOut).equals(withoutDate(largeParallelOut))
+                    && Arrays.equals(largeXMLOut.toByteArray(), largeXMLParallelOut.toByteArray())
+                    && Arrays.equals(largeCompactOut.toByteArray(), largeCompactParallelOut.toByteArray())));
+            IniProperties orphan = new IniProperties();
+            orphan.switchSection("missing.section_4");
+            orphan.setProperty("val4", "4");
+            ByteArrayOutputStream orphanOut = new ByteArrayOutputStream();
+            orphan.storeToXML(orphanOut, null);
+            IniProperties iniOrphan = new IniProperties();
+            iniOrphan.loadFromXML(new ByteArrayInputStream(orphanOut.toByteArray()));
+            System.out.println("Equals (XML, missing parent): " + orphan.equals(iniOrphan));
+            ByteArrayOutputStream compactOut = new ByteArrayOutputStream();
+            ini.storeToXML(compactOut, null, StandardCharsets.UTF_8, true);
+            IniProperties iniCompact = new IniProperties();
+            iniCompact.loadFromXML(new ByteArrayInputStream(compactOut.toByteArray()));
+            System.out.println("Equals (compact XML): " + ini.equals(iniCompact));
+            IniProperties iniAsync = ini.storeAsync(Paths.get("out_async.ini"), null)
+                    .thenCompose(stored -> new IniProperties().loadAsync(Paths.get("out_async.ini"))).join();
+            System.out.println("Equals (async): " + ini.equals(iniAsync));
         }
         catch (Throwable t) {
             throw new RuntimeException("SaveIni failed: \n" + t);
         }
     }
 
+    private static boolean keepsAttributes(IniProperties ini) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) return true;
+        Path dir = Files.createTempDirectory("atomic");
+        Path path = dir.resolve("private.ini");
+        Path link = dir.resolve("link.ini");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-------");
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(permissions));
+            Files.createSymbolicLink(link, path.getFileName());
+            ini.store(link, null);
+            IniProperties stored = new IniProperties();
+            stored.load(path);
+            return Files.isSymbolicLink(link) && permissions.equals(Files.getPosixFilePermissions(path)) && ini.equals(stored);
+        }
+        finally {
+            Files.deleteIfExists(link);
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static String withoutDate(ByteArrayOutputStream out) {
+        String content = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        return content.substring(content.indexOf('\n') + 1);
+    }
+
 }